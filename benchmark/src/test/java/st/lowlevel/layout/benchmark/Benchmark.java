@@ -0,0 +1,56 @@
+package st.lowlevel.layout.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Minimal harness that reports the time and the allocated bytes per operation.
+ * Numbers are measured under Robolectric, so they are only meaningful relative to each other.
+ */
+final class Benchmark {
+
+    interface Operation {
+        void run(int iteration);
+    }
+
+    private Benchmark() {
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Runs an operation after a warm up and prints its cost
+     *
+     * @param name the benchmark name
+     * @param children the number of children in the layout
+     * @param iterations the number of measured iterations
+     * @param operation the operation to measure
+     */
+    static void run(String name, int children, int iterations, Operation operation) {
+        for (int i = 0; i < iterations / 10; i++) {
+            operation.run(i);
+        }
+
+        long bytes = getAllocatedBytes();
+        long time = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            operation.run(i);
+        }
+
+        time = System.nanoTime() - time;
+        bytes = getAllocatedBytes() - bytes;
+
+        System.out.println(String.format(Locale.US, "%-24s children=%-4d %12.1f ns/op %10.1f B/op",
+                name, children, (double) time / iterations, (double) bytes / iterations));
+    }
+}
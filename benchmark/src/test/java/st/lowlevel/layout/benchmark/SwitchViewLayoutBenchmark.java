@@ -0,0 +1,114 @@
+package st.lowlevel.layout.benchmark;
+
+import android.content.Context;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import st.lowlevel.layout.SwitchViewLayout;
+import st.lowlevel.switchviewlayout.benchmark.BuildConfig;
+import st.lowlevel.switchviewlayout.benchmark.R;
+
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SwitchViewLayoutBenchmark {
+
+    private static final int ITERATIONS = 10000;
+    private static final int INFLATE_ITERATIONS = 500;
+
+    private final int mChildren;
+    private Context mContext;
+    private SwitchViewLayout mLayout;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "children = {0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] { { 2 }, { 10 }, { 100 } });
+    }
+
+    public SwitchViewLayoutBenchmark(int children) {
+        mChildren = children;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mLayout = new SwitchViewLayout(mContext);
+
+        for (int id = 1; id <= mChildren; id++) {
+            mLayout.addView(id, new View(mContext));
+        }
+
+        mLayout.switchView(1);
+    }
+
+    @Test
+    public void addViewFromResource() {
+        Benchmark.run("addView(id, resId)", mChildren, INFLATE_ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.addView(mChildren + 1, R.layout.svl_benchmark_state);
+            }
+        });
+    }
+
+    @Test
+    public void getCurrentView() {
+        Benchmark.run("getCurrentView", mChildren, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.getCurrentView();
+            }
+        });
+    }
+
+    @Test
+    public void hasView() {
+        Benchmark.run("hasView", mChildren, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.hasView(1 + iteration % mChildren);
+            }
+        });
+    }
+
+    @Test
+    public void replaceView() {
+        Benchmark.run("replaceView", mChildren, INFLATE_ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.replaceView(1, R.layout.svl_benchmark_state);
+            }
+        });
+    }
+
+    @Test
+    public void switchView() {
+        Benchmark.run("switchView", mChildren, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.switchView(1 + (iteration & 1));
+            }
+        });
+    }
+
+    @Test
+    public void switchViewAnimated() {
+        mLayout.setEnterAnimation(st.lowlevel.switchviewlayout.R.anim.svl_fade_in);
+        mLayout.setExitAnimation(st.lowlevel.switchviewlayout.R.anim.svl_fade_out);
+
+        Benchmark.run("switchView(animated)", mChildren, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                mLayout.switchView(1 + (iteration & 1), true);
+            }
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package st.lowlevel.layout;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.support.annotation.AnimRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Process-wide cache of parsed animation resources, used from the main thread.
+ * Alpha animations are parsed once for the current configuration and each view gets a new
+ * {@link FadeAnimation} built from the parsed values.
+ * Other animations are loaded from the resource every time.
+ */
+final class AnimationCache {
+
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+    private static final AlphaSpec UNSUPPORTED = new AlphaSpec();
+
+    private static Configuration sConfiguration;
+    private static final SparseArray<AlphaSpec> sSpecs = new SparseArray<>();
+
+    private AnimationCache() {
+    }
+
+    @Nullable
+    private static AlphaSpec getSpec(@NonNull Context context, @AnimRes int resId) {
+        Configuration configuration = context.getResources().getConfiguration();
+
+        if (sConfiguration == null || !sConfiguration.equals(configuration)) {
+            sConfiguration = new Configuration(configuration);
+            sSpecs.clear();
+        }
+
+        AlphaSpec spec = sSpecs.get(resId);
+
+        if (spec == null) {
+            spec = parse(context, resId);
+            sSpecs.put(resId, spec);
+        }
+
+        return (spec != UNSUPPORTED) ? spec : null;
+    }
+
+    @NonNull
+    private static AlphaSpec parse(@NonNull Context context, @AnimRes int resId) {
+        Resources res = context.getResources();
+        XmlResourceParser parser = res.getAnimation(resId);
+
+        try {
+            int type;
+
+            do {
+                type = parser.next();
+            } while (type != XmlPullParser.START_TAG && type != XmlPullParser.END_DOCUMENT);
+
+            if (type != XmlPullParser.START_TAG || !"alpha".equals(parser.getName())) {
+                return UNSUPPORTED;
+            }
+
+            AlphaSpec spec = new AlphaSpec();
+
+            for (int i = 0; i < parser.getAttributeCount(); i++) {
+                String value = parser.getAttributeValue(i);
+
+                if (!ANDROID_NAMESPACE.equals(parser.getAttributeNamespace(i))
+                        || (value != null && value.startsWith("?"))) {
+                    return UNSUPPORTED;
+                }
+
+                switch (parser.getAttributeName(i)) {
+                case "duration":
+                    spec.mDuration = getInteger(res, parser, i);
+                    break;
+
+                case "fillAfter":
+                    spec.mFillAfter = parser.getAttributeBooleanValue(i, false);
+                    break;
+
+                case "fromAlpha":
+                    spec.mFromAlpha = parser.getAttributeFloatValue(i, 1f);
+                    break;
+
+                case "interpolator":
+                    spec.mInterpolator = AnimationUtils.loadInterpolator(context,
+                            parser.getAttributeResourceValue(i, 0));
+                    break;
+
+                case "startOffset":
+                    spec.mStartOffset = getInteger(res, parser, i);
+                    break;
+
+                case "toAlpha":
+                    spec.mToAlpha = parser.getAttributeFloatValue(i, 1f);
+                    break;
+
+                default:
+                    return UNSUPPORTED;
+                }
+            }
+
+            return spec;
+        } catch (XmlPullParserException | IOException | Resources.NotFoundException e) {
+            return UNSUPPORTED;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static int getInteger(@NonNull Resources res, @NonNull XmlResourceParser parser, int index) {
+        int resId = parser.getAttributeResourceValue(index, 0);
+
+        return (resId != 0) ? res.getInteger(resId) : parser.getAttributeIntValue(index, 0);
+    }
+
+    /**
+     * Loads an animation from a resource, reusing the parsed values of alpha animations
+     *
+     * @param context the context used to load the animation
+     * @param resId the animation resource
+     * @return a new animation instance
+     */
+    @NonNull
+    static Animation loadAnimation(@NonNull Context context, @AnimRes int resId) {
+        AlphaSpec spec = getSpec(context, resId);
+
+        if (spec == null) {
+            return AnimationUtils.loadAnimation(context, resId);
+        }
+
+        FadeAnimation anim = new FadeAnimation(spec.mFromAlpha, spec.mToAlpha, spec.mDuration);
+        anim.setFillAfter(spec.mFillAfter);
+        anim.setStartOffset(spec.mStartOffset);
+
+        if (spec.mInterpolator != null) {
+            anim.setInterpolator(spec.mInterpolator);
+        }
+
+        return anim;
+    }
+
+    private static final class AlphaSpec {
+
+        private long mDuration;
+        private boolean mFillAfter;
+        private float mFromAlpha = 1f;
+        private Interpolator mInterpolator;
+        private long mStartOffset;
+        private float mToAlpha = 1f;
+    }
+}
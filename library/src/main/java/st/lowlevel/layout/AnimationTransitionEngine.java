@@ -0,0 +1,215 @@
+package st.lowlevel.layout;
+
+import android.support.annotation.AnimRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.view.animation.Animation;
+
+import st.lowlevel.switchviewlayout.R;
+
+/**
+ * Transition engine based on view animations.
+ * Animations set from a resource are loaded once for each view and reused,
+ * alpha animations are parsed once for all the views.
+ * An alpha animation that interrupts another one continues from the alpha reached by it.
+ */
+public class AnimationTransitionEngine implements TransitionEngine {
+
+    private Animation mAnimationEnter;
+    private int mAnimationEnterRes;
+    private Animation mAnimationExit;
+    private int mAnimationExitRes;
+
+    @Override
+    public void cancel(@NonNull View view) {
+        ViewAnimations animations = getViewAnimations(view);
+        animations.mActive = null;
+
+        view.removeCallbacks(animations);
+        view.clearAnimation();
+    }
+
+    @Override
+    public void enter(@NonNull View view, @NonNull Callback callback) {
+        ViewAnimations animations = getViewAnimations(view);
+
+        start(animations, animations.getEnterAnimation(this), (mAnimationEnterRes > 0), callback);
+    }
+
+    @Override
+    public void exit(@NonNull View view, @NonNull Callback callback) {
+        ViewAnimations animations = getViewAnimations(view);
+
+        view.setVisibility(View.GONE);
+
+        start(animations, animations.getExitAnimation(this), (mAnimationExitRes > 0), callback);
+    }
+
+    @NonNull
+    private ViewAnimations getViewAnimations(@NonNull View view) {
+        ViewAnimations animations = (ViewAnimations) view.getTag(R.id.svl_animation_transition);
+
+        if (animations == null) {
+            animations = new ViewAnimations(view);
+            view.setTag(R.id.svl_animation_transition, animations);
+        }
+
+        return animations;
+    }
+
+    private void start(@NonNull ViewAnimations animations, @Nullable Animation anim, boolean ownInstance,
+                       @NonNull Callback callback) {
+        View view = animations.mView;
+        Animation previous = animations.mActive;
+
+        animations.mActive = null;
+        view.removeCallbacks(animations);
+        view.clearAnimation();
+
+        if (anim instanceof FadeAnimation && ownInstance) {
+            if (previous instanceof FadeAnimation) {
+                ((FadeAnimation) anim).startFrom(((FadeAnimation) previous).getAlpha());
+            } else {
+                ((FadeAnimation) anim).restart();
+            }
+        }
+
+        if (anim == null) {
+            callback.onTransitionEnd(view);
+            return;
+        }
+
+        animations.mActive = anim;
+        animations.mCallback = callback;
+        animations.mShared = !ownInstance;
+
+        if (ownInstance) {
+            anim.setAnimationListener(animations);
+            view.startAnimation(anim);
+        } else {
+            // a shared instance can't report the end of each view, it ends after its duration
+            view.startAnimation(anim);
+            view.postDelayed(animations, anim.computeDurationHint());
+        }
+    }
+
+    /**
+     * Sets the view enter animation.
+     * The instance is shared by all the views and the transition ends after its duration
+     *
+     * @param anim the animation instance or null
+     * @return AnimationTransitionEngine
+     */
+    public AnimationTransitionEngine setEnterAnimation(@Nullable Animation anim) {
+        mAnimationEnter = anim;
+        mAnimationEnterRes = 0;
+        return this;
+    }
+
+    /**
+     * Sets the view enter animation.
+     * The animation is loaded once for each view when it is first needed
+     *
+     * @param resId the animation resource
+     * @return AnimationTransitionEngine
+     */
+    public AnimationTransitionEngine setEnterAnimation(@AnimRes int resId) {
+        mAnimationEnter = null;
+        mAnimationEnterRes = resId;
+        return this;
+    }
+
+    /**
+     * Sets the view exit animation.
+     * The instance is shared by all the views and the transition ends after its duration
+     *
+     * @param anim the animation instance or null
+     * @return AnimationTransitionEngine
+     */
+    public AnimationTransitionEngine setExitAnimation(@Nullable Animation anim) {
+        mAnimationExit = anim;
+        mAnimationExitRes = 0;
+        return this;
+    }
+
+    /**
+     * Sets the view exit animation.
+     * The animation is loaded once for each view when it is first needed
+     *
+     * @param resId the animation resource
+     * @return AnimationTransitionEngine
+     */
+    public AnimationTransitionEngine setExitAnimation(@AnimRes int resId) {
+        mAnimationExit = null;
+        mAnimationExitRes = resId;
+        return this;
+    }
+
+    private static final class ViewAnimations implements Animation.AnimationListener, Runnable {
+
+        private Animation mActive;
+        private Callback mCallback;
+        private Animation mEnter;
+        private int mEnterRes;
+        private Animation mExit;
+        private int mExitRes;
+        private boolean mShared;
+        private final View mView;
+
+        ViewAnimations(@NonNull View view) {
+            mView = view;
+        }
+
+        @Nullable
+        Animation getEnterAnimation(@NonNull AnimationTransitionEngine engine) {
+            if (engine.mAnimationEnterRes <= 0) {
+                return engine.mAnimationEnter;
+            }
+
+            if (mEnterRes != engine.mAnimationEnterRes) {
+                mEnter = AnimationCache.loadAnimation(mView.getContext(), engine.mAnimationEnterRes);
+                mEnterRes = engine.mAnimationEnterRes;
+            }
+
+            return mEnter;
+        }
+
+        @Nullable
+        Animation getExitAnimation(@NonNull AnimationTransitionEngine engine) {
+            if (engine.mAnimationExitRes <= 0) {
+                return engine.mAnimationExit;
+            }
+
+            if (mExitRes != engine.mAnimationExitRes) {
+                mExit = AnimationCache.loadAnimation(mView.getContext(), engine.mAnimationExitRes);
+                mExitRes = engine.mAnimationExitRes;
+            }
+
+            return mExit;
+        }
+
+        @Override
+        public void onAnimationEnd(Animation animation) {
+            if (animation == mActive) {
+                mView.post(this);
+            }
+        }
+
+        @Override
+        public void onAnimationRepeat(Animation animation) {
+        }
+
+        @Override
+        public void onAnimationStart(Animation animation) {
+        }
+
+        @Override
+        public void run() {
+            if (mActive != null && (mShared || mActive.hasEnded())) {
+                mActive = null;
+                mCallback.onTransitionEnd(mView);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package st.lowlevel.layout;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Inflates layouts on a shared background thread and delivers them on the main thread.
+ * Layouts are inflated against the parent so the layout params of their root are kept.
+ * The background thread has no looper, so views that need one fail to inflate there
+ * and are reported as null to be inflated on the main thread instead.
+ * The inflater doesn't use the factories of the context inflater, which are not thread safe,
+ * so widgets are not replaced by their compat versions.
+ */
+final class AsyncInflater implements Handler.Callback {
+
+    interface Callback {
+        void onInflateFinished(@Nullable View view, int id, @LayoutRes int resId);
+    }
+
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper(), this);
+    private final LayoutInflater mInflater;
+    private final ViewGroup mParent;
+
+    AsyncInflater(@NonNull ViewGroup parent, @NonNull Callback callback) {
+        mCallback = callback;
+        mInflater = new BasicInflater(parent.getContext());
+        mParent = parent;
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        Request request = (Request) msg.obj;
+
+        mCallback.onInflateFinished(request.view, request.id, request.resId);
+
+        return true;
+    }
+
+    /**
+     * Enqueues the inflation of a layout
+     *
+     * @param id the view id
+     * @param resId the layout resource
+     */
+    void inflate(int id, @LayoutRes int resId) {
+        Request request = new Request();
+        request.inflater = this;
+        request.id = id;
+        request.resId = resId;
+
+        InflateThread.getInstance().enqueue(request);
+    }
+
+    private static final class BasicInflater extends LayoutInflater {
+
+        private static final String[] CLASS_PREFIXES = {"android.widget.", "android.webkit.", "android.app."};
+
+        BasicInflater(@NonNull Context context) {
+            super(context);
+        }
+
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+            return new BasicInflater(newContext);
+        }
+
+        @Override
+        protected View onCreateView(String name, AttributeSet attrs) throws ClassNotFoundException {
+            for (String prefix : CLASS_PREFIXES) {
+                try {
+                    View view = createView(name, prefix, attrs);
+
+                    if (view != null) {
+                        return view;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // try the next prefix
+                }
+            }
+
+            return super.onCreateView(name, attrs);
+        }
+    }
+
+    private static final class Request {
+        AsyncInflater inflater;
+        int id;
+        int resId;
+        View view;
+    }
+
+    private static final class InflateThread extends Thread {
+
+        private static InflateThread sInstance;
+
+        private final BlockingQueue<Request> mQueue = new LinkedBlockingQueue<>();
+
+        private InflateThread() {
+            super("SwitchViewLayout-inflater");
+        }
+
+        static synchronized InflateThread getInstance() {
+            if (sInstance == null) {
+                sInstance = new InflateThread();
+                sInstance.start();
+            }
+
+            return sInstance;
+        }
+
+        void enqueue(@NonNull Request request) {
+            mQueue.add(request);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Request request;
+
+                try {
+                    request = mQueue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+
+                LayoutInflater inflater = request.inflater.mInflater;
+                boolean traced = SwitchTrace.begin(inflater.getContext().getResources(), "inflateAsync",
+                        request.resId);
+
+                try {
+                    request.view = inflater.inflate(request.resId, request.inflater.mParent, false);
+                } catch (RuntimeException e) {
+                    request.view = null;
+                }
+
+                SwitchTrace.end(traced);
+
+                Message.obtain(request.inflater.mHandler, 0, request).sendToTarget();
+            }
+        }
+    }
+}
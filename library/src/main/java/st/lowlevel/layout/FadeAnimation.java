@@ -0,0 +1,72 @@
+package st.lowlevel.layout;
+
+import android.view.animation.Animation;
+import android.view.animation.Transformation;
+
+/**
+ * Alpha animation that can be restarted from any alpha value, so an interrupted transition
+ * continues from the alpha reached by the previous one. The duration is scaled by the
+ * remaining distance to the target alpha.
+ */
+final class FadeAnimation extends Animation {
+
+    private float mAlpha;
+    private final long mFullDuration;
+    private float mFromAlpha;
+    private final float mSpecFromAlpha;
+    private final float mToAlpha;
+
+    FadeAnimation(float fromAlpha, float toAlpha, long duration) {
+        mFullDuration = duration;
+        mSpecFromAlpha = fromAlpha;
+        mToAlpha = toAlpha;
+
+        startFrom(fromAlpha);
+    }
+
+    @Override
+    protected void applyTransformation(float interpolatedTime, Transformation t) {
+        mAlpha = mFromAlpha + ((mToAlpha - mFromAlpha) * interpolatedTime);
+        t.setAlpha(mAlpha);
+    }
+
+    @Override
+    public boolean willChangeBounds() {
+        return false;
+    }
+
+    @Override
+    public boolean willChangeTransformationMatrix() {
+        return false;
+    }
+
+    /**
+     * Gets the alpha applied on the last frame
+     *
+     * @return the alpha value
+     */
+    float getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * Prepares the animation to run from the initial alpha of its resource
+     */
+    void restart() {
+        startFrom(mSpecFromAlpha);
+    }
+
+    /**
+     * Prepares the animation to run from the given alpha
+     *
+     * @param alpha the alpha to start from
+     */
+    void startFrom(float alpha) {
+        float distance = Math.abs(mToAlpha - mSpecFromAlpha);
+
+        mAlpha = alpha;
+        mFromAlpha = alpha;
+
+        setDuration((distance > 0) ? (long) (mFullDuration * Math.abs(mToAlpha - alpha) / distance) : mFullDuration);
+    }
+}
@@ -0,0 +1,134 @@
+package st.lowlevel.layout;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Collects the metrics of a switch until its transitions end and a frame has been drawn.
+ * Dropped frames are detected from the intervals between Choreographer frames.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class MetricsTracker implements Choreographer.FrameCallback {
+
+    private int mFrames;
+    private final long mFrameInterval;
+    private long mLastFrameTime;
+    private final SwitchViewLayout mLayout;
+    private final SwitchViewLayout.OnSwitchMetricsListener mListener;
+    private final SwitchMetrics mMetrics = new SwitchMetrics();
+    private int mPendingTransitions;
+    private long mStartTime;
+    private int mSwitchCount;
+    private boolean mTracking;
+    private long mTransitionStartTime;
+
+    MetricsTracker(@NonNull Context context, @NonNull SwitchViewLayout layout,
+                   @NonNull SwitchViewLayout.OnSwitchMetricsListener listener) {
+        WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = wm.getDefaultDisplay().getRefreshRate();
+
+        mFrameInterval = (long) (1000000000 / ((refreshRate > 0) ? refreshRate : 60));
+        mLayout = layout;
+        mListener = listener;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mTracking) {
+            return;
+        }
+
+        if (mLastFrameTime > 0) {
+            long interval = frameTimeNanos - mLastFrameTime;
+
+            if (interval > mFrameInterval * 3 / 2) {
+                mMetrics.mDroppedFrames += (int) (interval / mFrameInterval) - 1;
+            }
+        }
+
+        mLastFrameTime = frameTimeNanos;
+        mFrames++;
+
+        if (mPendingTransitions == 0 && mFrames >= 2) {
+            finish();
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    void addInflateTime(long time) {
+        if (mTracking) {
+            mMetrics.mInflateTime += time;
+        }
+    }
+
+    void addLayoutTime(long time) {
+        if (mTracking) {
+            mMetrics.mLayoutTime += time;
+        }
+    }
+
+    void cancel() {
+        if (mTracking) {
+            mTracking = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    /**
+     * Gets the number of the switch being tracked, used to ignore the transitions of
+     * previous switches when they end
+     *
+     * @return the switch number or 0 if no switch is being tracked
+     */
+    int getTrackedSwitch() {
+        return mTracking ? mSwitchCount : 0;
+    }
+
+    void onTransitionEnd(int trackedSwitch) {
+        if (trackedSwitch != getTrackedSwitch()) {
+            return;
+        }
+
+        if (mPendingTransitions > 0 && --mPendingTransitions == 0) {
+            mMetrics.mTransitionTime = System.nanoTime() - mTransitionStartTime;
+        }
+    }
+
+    void onTransitionStart() {
+        if (mPendingTransitions++ == 0) {
+            mTransitionStartTime = System.nanoTime();
+        }
+    }
+
+    void start(int id) {
+        if (mTracking) {
+            finish();
+        }
+
+        mFrames = 0;
+        mLastFrameTime = 0;
+        mMetrics.reset(id);
+        mPendingTransitions = 0;
+        mStartTime = System.nanoTime();
+        mSwitchCount = (mSwitchCount == Integer.MAX_VALUE) ? 1 : mSwitchCount + 1;
+        mTracking = true;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    private void finish() {
+        cancel();
+
+        if (mPendingTransitions > 0) {
+            mMetrics.mTransitionTime = System.nanoTime() - mTransitionStartTime;
+        }
+
+        mMetrics.mTotalTime = System.nanoTime() - mStartTime;
+        mListener.onSwitchMetrics(mLayout, mMetrics);
+    }
+}
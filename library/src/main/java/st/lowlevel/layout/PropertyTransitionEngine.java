@@ -0,0 +1,163 @@
+package st.lowlevel.layout;
+
+import android.animation.Animator;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+import st.lowlevel.switchviewlayout.R;
+
+/**
+ * Transition engine that fades the views with {@link android.view.ViewPropertyAnimator}.
+ * The animations can run on the render thread and do not invalidate the parent on every frame.
+ * An interrupted transition continues from the current alpha, with its duration scaled
+ * by the remaining distance.
+ * Views are shown and hidden without animation before API 12.
+ */
+public class PropertyTransitionEngine implements TransitionEngine {
+
+    private static final long DEFAULT_DURATION = 400;
+
+    private long mDuration = DEFAULT_DURATION;
+    private Interpolator mInterpolator = new DecelerateInterpolator();
+
+    @Override
+    public void cancel(@NonNull View view) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+            return;
+        }
+
+        ViewListener listener = getViewListener(view);
+        listener.mRunning = false;
+
+        view.animate().cancel();
+        view.setAlpha(1f);
+    }
+
+    @Override
+    public void enter(@NonNull View view, @NonNull Callback callback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+            callback.onTransitionEnd(view);
+            return;
+        }
+
+        ViewListener listener = getViewListener(view);
+        boolean running = listener.mRunning;
+
+        listener.mRunning = false;
+        view.animate().cancel();
+
+        if (!running) {
+            view.setAlpha(0f);
+        }
+
+        start(listener, false, 1f, callback);
+    }
+
+    @Override
+    public void exit(@NonNull View view, @NonNull Callback callback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+            view.setVisibility(View.GONE);
+            callback.onTransitionEnd(view);
+            return;
+        }
+
+        ViewListener listener = getViewListener(view);
+
+        listener.mRunning = false;
+        view.animate().cancel();
+
+        start(listener, true, 0f, callback);
+    }
+
+    @NonNull
+    private ViewListener getViewListener(@NonNull View view) {
+        ViewListener listener = (ViewListener) view.getTag(R.id.svl_property_transition);
+
+        if (listener == null) {
+            listener = new ViewListener(view);
+            view.setTag(R.id.svl_property_transition, listener);
+        }
+
+        return listener;
+    }
+
+    private void start(@NonNull ViewListener listener, boolean exit, float alpha, @NonNull Callback callback) {
+        listener.mCallback = callback;
+        listener.mExit = exit;
+        listener.mRunning = true;
+
+        View view = listener.mView;
+        float distance = Math.abs(alpha - view.getAlpha());
+
+        view.animate()
+                .alpha(alpha)
+                .setDuration((long) (mDuration * distance))
+                .setInterpolator(mInterpolator)
+                .setListener(listener);
+    }
+
+    /**
+     * Sets the duration of the transitions
+     *
+     * @param duration the duration in milliseconds
+     * @return PropertyTransitionEngine
+     */
+    public PropertyTransitionEngine setDuration(long duration) {
+        mDuration = duration;
+        return this;
+    }
+
+    /**
+     * Sets the interpolator of the transitions
+     *
+     * @param interpolator the interpolator instance
+     * @return PropertyTransitionEngine
+     */
+    public PropertyTransitionEngine setInterpolator(@NonNull Interpolator interpolator) {
+        mInterpolator = interpolator;
+        return this;
+    }
+
+    private static final class ViewListener implements Animator.AnimatorListener {
+
+        private Callback mCallback;
+        private boolean mExit;
+        private boolean mRunning;
+        private final View mView;
+
+        ViewListener(@NonNull View view) {
+            mView = view;
+        }
+
+        @Override
+        public void onAnimationCancel(Animator animation) {
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!mRunning) {
+                return;
+            }
+
+            mRunning = false;
+
+            if (mExit) {
+                mView.setVisibility(View.GONE);
+                mView.setAlpha(1f);
+            }
+
+            mCallback.onTransitionEnd(mView);
+        }
+
+        @Override
+        public void onAnimationRepeat(Animator animation) {
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+        }
+    }
+}
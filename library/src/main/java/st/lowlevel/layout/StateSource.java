@@ -0,0 +1,35 @@
+package st.lowlevel.layout;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Stream of view ids that drives a {@link SwitchViewLayout} bound with
+ * {@link SwitchViewLayout#bind(StateSource)}.
+ * The layout subscribes while it is attached to a window, so a source should deliver its
+ * latest state when subscribed.
+ */
+public interface StateSource {
+
+    interface Observer {
+        /**
+         * Notifies a new state. Can be called from any thread
+         *
+         * @param id the view id
+         */
+        void onStateChanged(int id);
+    }
+
+    /**
+     * Starts delivering states to the observer
+     *
+     * @param observer the observer instance
+     */
+    void subscribe(@NonNull Observer observer);
+
+    /**
+     * Stops delivering states to the observer
+     *
+     * @param observer the observer instance
+     */
+    void unsubscribe(@NonNull Observer observer);
+}
@@ -0,0 +1,81 @@
+package st.lowlevel.layout;
+
+/**
+ * Costs measured for a single view switch.
+ * The instance is reused by the layout and is only valid during the listener callback.
+ */
+public class SwitchMetrics {
+
+    int mDroppedFrames;
+    int mId;
+    long mInflateTime;
+    long mLayoutTime;
+    long mTotalTime;
+    long mTransitionTime;
+
+    SwitchMetrics() {
+    }
+
+    /**
+     * Gets the number of frames dropped while the switch was running
+     *
+     * @return the number of dropped frames
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Gets the id of the view that was shown
+     *
+     * @return the view id
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * Gets the time spent inflating the view on the main thread
+     *
+     * @return the time in nanoseconds
+     */
+    public long getInflateTime() {
+        return mInflateTime;
+    }
+
+    /**
+     * Gets the time spent measuring and laying out the layout
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLayoutTime() {
+        return mLayoutTime;
+    }
+
+    /**
+     * Gets the time from the switch until the transitions ended and the first frame was drawn
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /**
+     * Gets the time spent running the enter and exit transitions
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTransitionTime() {
+        return mTransitionTime;
+    }
+
+    void reset(int id) {
+        mDroppedFrames = 0;
+        mId = id;
+        mInflateTime = 0;
+        mLayoutTime = 0;
+        mTotalTime = 0;
+        mTransitionTime = 0;
+    }
+}
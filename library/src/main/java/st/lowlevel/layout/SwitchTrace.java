@@ -0,0 +1,65 @@
+package st.lowlevel.layout;
+
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+
+/**
+ * Trace sections shown in systrace and Perfetto, labelled with the resource name of the
+ * view id or layout. Sections are only opened while tracing is enabled, otherwise they
+ * cost a flag check.
+ */
+final class SwitchTrace {
+
+    private static final int MAX_SECTION_LENGTH = 127;
+    private static final String PREFIX = "SwitchViewLayout#";
+
+    static volatile boolean sEnabled;
+
+    private SwitchTrace() {
+    }
+
+    /**
+     * Opens a trace section if tracing is enabled
+     *
+     * @param res the resources used to resolve the name of the resource
+     * @param name the name of the operation
+     * @param resId the view id or layout resource
+     * @return true if the section was opened and must be closed with {@link #end(boolean)}
+     */
+    static boolean begin(@NonNull Resources res, @NonNull String name, int resId) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+
+        String label;
+
+        try {
+            label = res.getResourceEntryName(resId);
+        } catch (Resources.NotFoundException e) {
+            label = String.valueOf(resId);
+        }
+
+        String section = PREFIX + name + " " + label;
+
+        if (section.length() > MAX_SECTION_LENGTH) {
+            section = section.substring(0, MAX_SECTION_LENGTH);
+        }
+
+        Trace.beginSection(section);
+
+        return true;
+    }
+
+    /**
+     * Closes a trace section opened with {@link #begin(Resources, String, int)}
+     *
+     * @param began the value returned when the section was opened
+     */
+    static void end(boolean began) {
+        if (began && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+}
@@ -2,137 +2,1317 @@ package st.lowlevel.layout;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.AnimRes;
+import android.support.annotation.AnyThread;
 import android.support.annotation.AttrRes;
 import android.support.annotation.IdRes;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import android.view.Choreographer;
+import android.view.Gravity;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
 import android.widget.FrameLayout;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import st.lowlevel.switchviewlayout.R;
 
 public class SwitchViewLayout extends FrameLayout {
 
+    /**
+     * Layouts are inflated as soon as they are added
+     */
+    public static final int INFLATE_IMMEDIATE = 0;
+
+    /**
+     * Layouts are inflated the first time they are shown
+     */
+    public static final int INFLATE_LAZY = 1;
+
+    /**
+     * Layouts are inflated the first time they are shown or when the main thread is idle
+     */
+    public static final int INFLATE_ON_IDLE = 2;
+
+    /**
+     * Layouts are inflated on a background thread as soon as they are added.
+     * Switching to a layout that is still being inflated is deferred until it is ready.
+     * The layout inflater factories are not used, like in AsyncLayoutInflater
+     */
+    public static final int INFLATE_ASYNC = 3;
+
+    /**
+     * Inactive views stay attached to the layout
+     */
+    public static final int RETAIN_ATTACHED = 0;
+
+    /**
+     * Inactive views are detached from the layout but their instance is kept
+     */
+    public static final int RETAIN_DETACHED = 1;
+
+    /**
+     * Inactive views are released and inflated again from their layout resource when shown.
+     * Views added from an instance are detached instead
+     */
+    public static final int RETAIN_NONE = 2;
+
+    public interface OnSwitchMetricsListener {
+        void onSwitchMetrics(@NonNull SwitchViewLayout view, @NonNull SwitchMetrics metrics);
+    }
+
     public interface OnViewChangeListener {
         void onViewChange(@NonNull SwitchViewLayout view, int id);
     }
 
-    private Animation mAnimationEnter;
-    private Animation mAnimationExit;
-    private OnViewChangeListener mOnViewChangeListener;
+    public interface OnViewTransitionListener {
+        void onViewChangeEnded(@NonNull SwitchViewLayout view, int id);
+
+        void onViewChangeStarted(@NonNull SwitchViewLayout view, int id);
+    }
+
+    private static final OnViewChangeListener[] NO_CHANGE_LISTENERS = new OnViewChangeListener[0];
+    private static final OnViewTransitionListener[] NO_TRANSITION_LISTENERS = new OnViewTransitionListener[0];
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final AnimationTransitionEngine mAnimationEngine = new AnimationTransitionEngine();
+    private AsyncInflater mAsyncInflater;
+    private final SparseArray<View> mChildren = new SparseArray<>();
+    private boolean mCoalescedAnimate;
+    private Choreographer.FrameCallback mCoalescedFrameCallback;
+    private int mCoalescedId;
+    private boolean mCoalescedSwitchScheduled;
+    private boolean mCoalesceSwitches;
+    private int mChangingId;
+    private boolean mChangingView;
+    private int mCurrentId = NO_ID;
+    private boolean mDeferredAnimate;
+    private int mDeferredId;
+    private boolean mDeferredNotify;
+    private boolean mDeferredSwitchScheduled;
+    private final Rect mForegroundPadding = new Rect();
+    private boolean mHardwareLayersEnabled;
+    private boolean mIdleInflationScheduled;
+    private final SparseIntArray mInflatingLayouts = new SparseIntArray();
+    private int mInflationPolicy = INFLATE_IMMEDIATE;
+    private boolean mInterceptRequestLayout;
+    private LayoutInflater mInflater;
+    private boolean mInTransaction;
+    private int mLastHeightMeasureSpec;
+    private final SparseIntArray mLastShown = new SparseIntArray();
+    private int mLastWidthMeasureSpec;
+    private boolean mLayoutRequestIntercepted;
+    private final SparseIntArray mLayouts = new SparseIntArray();
+    private int mMaxRetainedViews = Integer.MAX_VALUE;
+    private boolean mMeasureCurrentOnly;
+    private MetricsTracker mMetricsTracker;
+    private final SparseArray<Long> mMinDisplayTimes = new SparseArray<>();
+    private OnViewChangeListener mOnViewChangeListener;
+    private OnViewChangeListener[] mOnViewChangeListeners = NO_CHANGE_LISTENERS;
+    private OnViewTransitionListener[] mOnViewTransitionListeners = NO_TRANSITION_LISTENERS;
+    private final Rect mPadding = new Rect();
+    private final SparseIntArray mPendingLayouts = new SparseIntArray();
+    private int mPendingTransitions;
+    private Choreographer.FrameCallback mPostedFrameCallback;
+    private final AtomicLong mPostedSwitch = new AtomicLong();
+    private final AtomicBoolean mPostedSwitchScheduled = new AtomicBoolean();
+    private final SparseBooleanArray mPrewarmViews = new SparseBooleanArray();
+    private boolean mQueuedAnimate;
+    private int mQueuedId = NO_ID;
+    private final ArrayList<View> mReconcileChildren = new ArrayList<>();
+    private boolean mReconcileVisibility;
+    private final SparseIntArray mReleasedLayouts = new SparseIntArray();
+    private boolean mReplacingChild;
+    private boolean mReportIntermediateViews;
+    private boolean mRetainingDetachedViews;
+    private final SparseIntArray mRetention = new SparseIntArray();
+    private int mShowCount;
+    private final SparseArray<Long> mShowDelays = new SparseArray<>();
+    private volatile boolean mStateAnimate;
+    private StateSource mStateSource;
+    private boolean mShowingView;
+    private long mShownTime;
+    private int mSwitchCount;
+    private boolean mTransactionViewChanged;
+    private TransitionEngine mTransitionEngine = mAnimationEngine;
+    private final SparseArray<ChildTransition> mTransitions = new SparseArray<>();
+    private SwitchViewPool mViewPool;
+
+    public SwitchViewLayout(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public SwitchViewLayout(@NonNull Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public SwitchViewLayout(@NonNull Context context, @Nullable AttributeSet attrs, @AttrRes int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        initialize(context, attrs);
+    }
+
+    private final AsyncInflater.Callback mAsyncInflaterCallback = new AsyncInflater.Callback() {
+        @Override
+        public void onInflateFinished(@Nullable View view, int id, @LayoutRes int resId) {
+            if (mInflatingLayouts.get(id, 0) != resId) {
+                return;
+            }
+
+            mInflatingLayouts.delete(id);
+
+            addChild(id, (view != null) ? view : obtainView(resId));
+
+            if (mQueuedId == id) {
+                mQueuedId = NO_ID;
+                performSwitch(id, mQueuedAnimate, true);
+            }
+        }
+    };
+
+    private final Runnable mCoalescedSwitchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            performCoalescedSwitch();
+        }
+    };
+
+    private final Runnable mDeferredSwitchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDeferredSwitchScheduled = false;
+
+            if (!isCurrentView(mDeferredId)) {
+                applySwitch(mDeferredId, mDeferredAnimate, mDeferredNotify, true);
+            }
+        }
+    };
+
+    private final MessageQueue.IdleHandler mIdleInflater = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (mInflationPolicy == INFLATE_ON_IDLE && mPendingLayouts.size() > 0) {
+                inflatePendingView(mPendingLayouts.keyAt(0));
+            } else if (mPrewarmViews.size() > 0) {
+                int id = mPrewarmViews.keyAt(0);
+                boolean buildLayer = mPrewarmViews.valueAt(0);
+
+                mPrewarmViews.delete(id);
+                prewarmChild(id, buildLayer);
+            }
+
+            mIdleInflationScheduled = hasIdleWork();
+
+            return mIdleInflationScheduled;
+        }
+    };
+
+    private final Runnable mPostedSwitchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                performPostedSwitch();
+                return;
+            }
+
+            if (mPostedFrameCallback == null) {
+                mPostedFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        performPostedSwitch();
+                    }
+                };
+            }
+
+            Choreographer.getInstance().postFrameCallback(mPostedFrameCallback);
+        }
+    };
+
+    private final StateSource.Observer mStateObserver = new StateSource.Observer() {
+        @Override
+        public void onStateChanged(int id) {
+            postSwitchView(id, mStateAnimate);
+        }
+    };
+
+    private final TransitionEngine.Callback mTransitionCallback = new TransitionEngine.Callback() {
+        @Override
+        public void onTransitionEnd(@NonNull View view) {
+            ChildTransition transition = getTransition(view);
+
+            if (transition == null) {
+                return;
+            }
+
+            boolean exit = transition.mExit;
+
+            endTransition(transition);
+
+            if (exit && view.getId() != mCurrentId) {
+                retainChild(view);
+            }
+        }
+    };
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        scheduleIdleInflation();
+
+        if (mStateSource != null) {
+            mStateSource.subscribe(mStateObserver);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelIdleInflation();
+
+        if (mStateSource != null) {
+            mStateSource.unsubscribe(mStateObserver);
+        }
+
+        mRetainingDetachedViews = true;
+
+        for (int i = mChildren.size() - 1; i >= 0; i--) {
+            View child = mChildren.valueAt(i);
+
+            if (child.getParent() == null && child.getWindowToken() != null) {
+                removeDetachedView(child, false);
+            }
+        }
+
+        mRetainingDetachedViews = false;
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        long startTime = System.nanoTime();
+
+        super.onLayout(changed, left, top, right, bottom);
+
+        trackLayoutTime(startTime);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        long startTime = System.nanoTime();
+
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+
+        View current = mMeasureCurrentOnly ? findChild(mCurrentId) : null;
+
+        if (current == null || current.getVisibility() == GONE) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        } else {
+            measureCurrentView(current, widthMeasureSpec, heightMeasureSpec);
+        }
+
+        trackLayoutTime(startTime);
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState savedState = (SavedState) state;
+
+        super.onRestoreInstanceState(savedState.getSuperState());
+
+        for (int i = 0; i < savedState.mLazyIds.length; i++) {
+            int id = savedState.mLazyIds[i];
+
+            if (!hasView(id)) {
+                mLayouts.put(id, savedState.mLazyLayouts[i]);
+                mPendingLayouts.put(id, savedState.mLazyLayouts[i]);
+                mRetention.put(id, savedState.mLazyRetention[i]);
+            }
+        }
+
+        if (savedState.mCurrentId != NO_ID && hasView(savedState.mCurrentId)) {
+            cancelCoalescedSwitch();
+            cancelDeferredSwitch();
+            restoreView(savedState.mCurrentId);
+        }
+
+        if (getWindowToken() != null) {
+            scheduleIdleInflation();
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState savedState = new SavedState(super.onSaveInstanceState());
+        int pending = mPendingLayouts.size();
+        int count = pending + mReleasedLayouts.size();
+
+        savedState.mCurrentId = getCurrentView();
+        savedState.mLazyIds = new int[count];
+        savedState.mLazyLayouts = new int[count];
+        savedState.mLazyRetention = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            SparseIntArray layouts = (i < pending) ? mPendingLayouts : mReleasedLayouts;
+            int index = (i < pending) ? i : i - pending;
+            int id = layouts.keyAt(index);
+
+            savedState.mLazyIds[i] = id;
+            savedState.mLazyLayouts[i] = layouts.valueAt(index);
+            savedState.mLazyRetention[i] = mRetention.get(id, RETAIN_ATTACHED);
+        }
+
+        return savedState;
+    }
+
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+
+        if (!mReplacingChild) {
+            child.setVisibility(GONE);
+        }
+
+        mChildren.put(child.getId(), child);
+    }
+
+    @Override
+    public void onViewRemoved(View child) {
+        super.onViewRemoved(child);
+
+        if (mRetainingDetachedViews || mReplacingChild) {
+            return;
+        }
+
+        int id = child.getId();
+
+        if (mChildren.get(id) == child) {
+            mChildren.remove(id);
+
+            cancelTransition(child);
+            mTransitions.remove(id);
+
+            if (id == mCurrentId) {
+                mCurrentId = NO_ID;
+            }
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mInterceptRequestLayout || mInTransaction) {
+            mLayoutRequestIntercepted = true;
+            return;
+        }
+
+        super.requestLayout();
+    }
+
+    private void addChild(int id, @Nullable View view) {
+        View oldView = findChild(id);
+
+        if (view == null || view == oldView) {
+            return;
+        }
+
+        mInflatingLayouts.delete(id);
+        mPendingLayouts.delete(id);
+        mReleasedLayouts.delete(id);
+
+        if (oldView != null) {
+            recycleChild(oldView);
+        }
+
+        view.setId(id);
+        addView(view);
+
+        trimRetainedViews();
+    }
+
+    private void applySwitch(int id, boolean animate, boolean notify, boolean notifyTransition) {
+        if (mMetricsTracker != null) {
+            mMetricsTracker.start(id);
+        }
+
+        mSwitchCount = (mSwitchCount == Integer.MAX_VALUE) ? 1 : mSwitchCount + 1;
+        mPendingTransitions = 0;
+
+        if (notifyTransition) {
+            dispatchViewChangeStarted(id);
+        } else {
+            dispatchViewChangeEnded();
+        }
+
+        mShowingView = true;
+        showView(id, animate);
+        mShowingView = false;
+
+        mShownTime = SystemClock.uptimeMillis();
+
+        if (notify) {
+            dispatchViewChange(id);
+        }
+
+        if (notifyTransition && mPendingTransitions == 0) {
+            dispatchViewChangeEnded();
+        }
+    }
+
+    private void applyTransaction(@NonNull Transaction transaction) {
+        mInTransaction = true;
+
+        try {
+            for (Transaction.Operation operation : transaction.mOperations) {
+                operation.apply(this);
+            }
+
+            if (transaction.mSwitchRequested) {
+                cancelCoalescedSwitch();
+                performSwitch(transaction.mSwitchId, transaction.mSwitchAnimate, true);
+            }
+        } finally {
+            mInTransaction = false;
+        }
+
+        if (mLayoutRequestIntercepted) {
+            mLayoutRequestIntercepted = false;
+            requestLayout();
+        }
+
+        if (mTransactionViewChanged) {
+            mTransactionViewChanged = false;
+            dispatchViewChange(getCurrentView());
+        }
+    }
+
+    @NonNull
+    private static <T> T[] appendListener(@NonNull T[] listeners, @NonNull T listener) {
+        for (T l : listeners) {
+            if (l == listener) {
+                return listeners;
+            }
+        }
+
+        T[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+
+        return result;
+    }
+
+    private void attachChild(@NonNull View view) {
+        if (view.getParent() != null) {
+            return;
+        }
+
+        if (view.getWindowToken() == getWindowToken()) {
+            attachViewToParent(view, -1, view.getLayoutParams());
+        } else {
+            addView(view);
+        }
+    }
+
+    private void cancelCoalescedSwitch() {
+        if (!mCoalescedSwitchScheduled) {
+            return;
+        }
+
+        if (mCoalescedFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(mCoalescedFrameCallback);
+        }
+
+        removeCallbacks(mCoalescedSwitchRunnable);
+        mCoalescedSwitchScheduled = false;
+    }
+
+    private void cancelDeferredSwitch() {
+        if (mDeferredSwitchScheduled) {
+            removeCallbacks(mDeferredSwitchRunnable);
+            mDeferredSwitchScheduled = false;
+        }
+    }
+
+    private void cancelIdleInflation() {
+        if (mIdleInflationScheduled) {
+            Looper.myQueue().removeIdleHandler(mIdleInflater);
+            mIdleInflationScheduled = false;
+        }
+    }
+
+    private void cancelTransition(@NonNull View view) {
+        ChildTransition transition = getTransition(view);
+
+        if (transition != null && transition.mRunning) {
+            mTransitionEngine.cancel(view);
+            endTransition(transition);
+        }
+    }
+
+    private void coalesceSwitch(int id, boolean animate) {
+        int previousId = mCoalescedSwitchScheduled ? mCoalescedId : getCurrentView();
+
+        mCoalescedId = id;
+        mCoalescedAnimate = animate;
+
+        if (mReportIntermediateViews && id != previousId) {
+            dispatchViewChange(id);
+        }
+
+        scheduleCoalescedSwitch();
+    }
+
+    private void detachChild(@NonNull View view) {
+        if (view.getParent() == this) {
+            detachViewFromParent(view);
+        }
+    }
+
+    private void discardView(int id) {
+        View view = findChild(id);
+
+        if (view != null) {
+            recycleChild(view);
+        }
+
+        mInflatingLayouts.delete(id);
+        mLastShown.delete(id);
+        mLayouts.delete(id);
+        mPendingLayouts.delete(id);
+        mPrewarmViews.delete(id);
+        mReleasedLayouts.delete(id);
+        mRetention.delete(id);
+    }
+
+    private void dispatchViewChange(int id) {
+        if (mInTransaction) {
+            mTransactionViewChanged = true;
+            return;
+        }
+
+        if (mOnViewChangeListener != null) {
+            mOnViewChangeListener.onViewChange(this, id);
+        }
+
+        for (OnViewChangeListener listener : mOnViewChangeListeners) {
+            listener.onViewChange(this, id);
+        }
+    }
+
+    private void dispatchViewChangeEnded() {
+        if (!mChangingView) {
+            return;
+        }
+
+        mChangingView = false;
+
+        for (OnViewTransitionListener listener : mOnViewTransitionListeners) {
+            listener.onViewChangeEnded(this, mChangingId);
+        }
+    }
+
+    private void dispatchViewChangeStarted(int id) {
+        mChangingId = id;
+        mChangingView = true;
+
+        for (OnViewTransitionListener listener : mOnViewTransitionListeners) {
+            listener.onViewChangeStarted(this, id);
+        }
+    }
+
+    private void endTransition(@NonNull ChildTransition transition) {
+        transition.end();
+
+        if (transition.mSwitch != 0) {
+            boolean current = (transition.mSwitch == mSwitchCount);
+
+            transition.mSwitch = 0;
+
+            if (current && --mPendingTransitions == 0 && !mShowingView) {
+                dispatchViewChangeEnded();
+            }
+        }
+
+        if (transition.mTrackedSwitch != 0) {
+            if (mMetricsTracker != null) {
+                mMetricsTracker.onTransitionEnd(transition.mTrackedSwitch);
+            }
+
+            transition.mTrackedSwitch = 0;
+        }
+    }
+
+    private View findChild(@IdRes int id) {
+        return mChildren.get(id);
+    }
+
+    private int findVisibleChild() {
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+
+            if (child.getVisibility() == VISIBLE) {
+                return child.getId();
+            }
+        }
+
+        return NO_ID;
+    }
+
+    @NonNull
+    private LayoutInflater getInflater() {
+        if (mInflater == null) {
+            mInflater = LayoutInflater.from(getContext());
+        }
+
+        return mInflater;
+    }
+
+    @NonNull
+    private Rect getPaddingWithForeground() {
+        // FrameLayout keeps these values private, the foreground is assumed to be inside the padding
+        mPadding.set(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
+
+        Drawable foreground = getForeground();
+
+        if (foreground != null && foreground.getPadding(mForegroundPadding)
+                && (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || getForegroundGravity() == Gravity.FILL)) {
+            mPadding.left = Math.max(mPadding.left, mForegroundPadding.left);
+            mPadding.top = Math.max(mPadding.top, mForegroundPadding.top);
+            mPadding.right = Math.max(mPadding.right, mForegroundPadding.right);
+            mPadding.bottom = Math.max(mPadding.bottom, mForegroundPadding.bottom);
+        }
+
+        return mPadding;
+    }
+
+    private long getSwitchDelay(int id) {
+        Long showDelay = mShowDelays.get(id);
+        Long minDisplayTime = mMinDisplayTimes.get(getCurrentView());
+        long delay = (showDelay != null) ? showDelay : 0;
+
+        if (minDisplayTime != null) {
+            delay = Math.max(delay, mShownTime + minDisplayTime - SystemClock.uptimeMillis());
+        }
+
+        return delay;
+    }
+
+    @Nullable
+    private ChildTransition getTransition(@NonNull View view) {
+        ChildTransition transition = mTransitions.get(view.getId());
+
+        return (transition != null && transition.mView == view) ? transition : null;
+    }
+
+    private boolean hasIdleWork() {
+        return ((mInflationPolicy == INFLATE_ON_IDLE && mPendingLayouts.size() > 0) || mPrewarmViews.size() > 0);
+    }
+
+    private View inflate(@LayoutRes int resId) {
+        if (resId <= 0) {
+            return null;
+        }
+
+        boolean traced = SwitchTrace.begin(getResources(), "inflate", resId);
+        View view = getInflater().inflate(resId, this, false);
+
+        SwitchTrace.end(traced);
+
+        return view;
+    }
+
+    private void inflateAsync(int id, @LayoutRes int resId) {
+        View view = (mViewPool != null) ? mViewPool.getView(resId) : null;
+
+        if (view != null) {
+            addChild(id, view);
+            return;
+        }
+
+        if (mAsyncInflater == null) {
+            mAsyncInflater = new AsyncInflater(this, mAsyncInflaterCallback);
+        }
+
+        mInflatingLayouts.put(id, resId);
+        mAsyncInflater.inflate(id, resId);
+    }
+
+    private View inflatePendingView(int id) {
+        int resId = mPendingLayouts.get(id, mReleasedLayouts.get(id, 0));
+
+        if (resId <= 0) {
+            return null;
+        }
+
+        addChild(id, obtainView(resId));
+
+        return findChild(id);
+    }
+
+    private void initialize(@NonNull Context context, @Nullable AttributeSet attrs) {
+        if (attrs != null) {
+            TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.SwitchViewLayout);
+
+            setEnterAnimation(
+                    ta.getResourceId(R.styleable.SwitchViewLayout_animationEnter, R.anim.svl_fade_in));
+            setExitAnimation(
+                    ta.getResourceId(R.styleable.SwitchViewLayout_animationExit, R.anim.svl_fade_out));
+
+            if (ta.getInt(R.styleable.SwitchViewLayout_transitionEngine, 0) == 1) {
+                setTransitionEngine(new PropertyTransitionEngine());
+            }
+
+            ta.recycle();
+        }
+    }
+
+    private void layoutChild(@NonNull View view) {
+        LayoutParams lp = (LayoutParams) view.getLayoutParams();
+        int gravity = (lp.gravity != -1) ? lp.gravity : (Gravity.TOP | Gravity.START);
+        int width = view.getMeasuredWidth();
+        int height = view.getMeasuredHeight();
+        Rect padding = getPaddingWithForeground();
+        int parentLeft = padding.left;
+        int parentRight = getWidth() - padding.right;
+        int parentTop = padding.top;
+        int parentBottom = getHeight() - padding.bottom;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            gravity = Gravity.getAbsoluteGravity(gravity, getLayoutDirection());
+        }
+
+        int left;
+        int top;
+
+        switch (gravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+        case Gravity.CENTER_HORIZONTAL:
+            left = parentLeft + (parentRight - parentLeft - width) / 2 + lp.leftMargin - lp.rightMargin;
+            break;
+
+        case Gravity.RIGHT:
+            left = parentRight - width - lp.rightMargin;
+            break;
+
+        default:
+            left = parentLeft + lp.leftMargin;
+            break;
+        }
+
+        switch (gravity & Gravity.VERTICAL_GRAVITY_MASK) {
+        case Gravity.CENTER_VERTICAL:
+            top = parentTop + (parentBottom - parentTop - height) / 2 + lp.topMargin - lp.bottomMargin;
+            break;
+
+        case Gravity.BOTTOM:
+            top = parentBottom - height - lp.bottomMargin;
+            break;
+
+        default:
+            top = parentTop + lp.topMargin;
+            break;
+        }
+
+        view.layout(left, top, left + width, top + height);
+    }
+
+    private boolean layoutInPlace(@Nullable View view) {
+        if (view == null || view.getVisibility() == GONE) {
+            return false;
+        }
+
+        int width = view.getWidth();
+        int height = view.getHeight();
+
+        if (width == 0 && height == 0) {
+            return false;
+        }
+
+        int measuredWidth = getMeasuredWidth();
+        int measuredHeight = getMeasuredHeight();
+
+        measureCurrentView(view, mLastWidthMeasureSpec, mLastHeightMeasureSpec);
+
+        if (view.getMeasuredWidth() != width || view.getMeasuredHeight() != height
+                || getMeasuredWidth() != measuredWidth || getMeasuredHeight() != measuredHeight) {
+            return false;
+        }
+
+        view.layout(view.getLeft(), view.getTop(), view.getRight(), view.getBottom());
+
+        return true;
+    }
+
+    private void measureCurrentView(@NonNull View current, int widthMeasureSpec, int heightMeasureSpec) {
+        measureChildWithMargins(current, widthMeasureSpec, 0, heightMeasureSpec, 0);
+
+        MarginLayoutParams lp = (MarginLayoutParams) current.getLayoutParams();
+        Rect padding = getPaddingWithForeground();
+        int horizontalPadding = padding.left + padding.right + lp.leftMargin + lp.rightMargin;
+        int verticalPadding = padding.top + padding.bottom + lp.topMargin + lp.bottomMargin;
+        int width = Math.max(current.getMeasuredWidth() + horizontalPadding, getSuggestedMinimumWidth());
+        int height = Math.max(current.getMeasuredHeight() + verticalPadding, getSuggestedMinimumHeight());
+        Drawable foreground = getForeground();
+
+        if (foreground != null) {
+            width = Math.max(width, foreground.getMinimumWidth());
+            height = Math.max(height, foreground.getMinimumHeight());
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            int state = current.getMeasuredState();
+
+            setMeasuredDimension(
+                    resolveSizeAndState(width, widthMeasureSpec, state),
+                    resolveSizeAndState(height, heightMeasureSpec, state << MEASURED_HEIGHT_STATE_SHIFT));
+        } else {
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+        }
+
+        boolean matchWidth = (lp.width == ViewGroup.LayoutParams.MATCH_PARENT
+                && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY);
+        boolean matchHeight = (lp.height == ViewGroup.LayoutParams.MATCH_PARENT
+                && MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.EXACTLY);
+
+        if (!matchWidth && !matchHeight) {
+            return;
+        }
+
+        // like FrameLayout, a match_parent child is measured again with the final size of the layout
+        int childWidthMeasureSpec = (lp.width == ViewGroup.LayoutParams.MATCH_PARENT)
+                ? MeasureSpec.makeMeasureSpec(Math.max(0, getMeasuredWidth() - horizontalPadding), MeasureSpec.EXACTLY)
+                : getChildMeasureSpec(widthMeasureSpec, horizontalPadding, lp.width);
+        int childHeightMeasureSpec = (lp.height == ViewGroup.LayoutParams.MATCH_PARENT)
+                ? MeasureSpec.makeMeasureSpec(Math.max(0, getMeasuredHeight() - verticalPadding), MeasureSpec.EXACTLY)
+                : getChildMeasureSpec(heightMeasureSpec, verticalPadding, lp.height);
+
+        current.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+    }
+
+    private View obtainView(@LayoutRes int resId) {
+        View view = (mViewPool != null) ? mViewPool.getView(resId) : null;
 
-    public SwitchViewLayout(@NonNull Context context) {
-        this(context, null);
+        return (view != null) ? view : inflate(resId);
     }
 
-    public SwitchViewLayout(@NonNull Context context, @Nullable AttributeSet attrs) {
-        this(context, attrs, 0);
+    private void performCoalescedSwitch() {
+        if (!mCoalescedSwitchScheduled) {
+            return;
+        }
+
+        mCoalescedSwitchScheduled = false;
+
+        performSwitch(mCoalescedId, mCoalescedAnimate, !mReportIntermediateViews);
     }
 
-    public SwitchViewLayout(@NonNull Context context, @Nullable AttributeSet attrs, @AttrRes int defStyleAttr) {
-        super(context, attrs, defStyleAttr);
-        initialize(context, attrs);
+    private void performPostedSwitch() {
+        mPostedSwitchScheduled.set(false);
+
+        long posted = mPostedSwitch.get();
+
+        cancelCoalescedSwitch();
+        performSwitch((int) (posted >> 1), (posted & 1) != 0, true);
     }
 
-    @Override
-    public void onViewAdded(View child) {
-        super.onViewAdded(child);
-        child.setVisibility(GONE);
+    private void performSwitch(int id, boolean animate, boolean notify) {
+        if (mInflatingLayouts.indexOfKey(id) >= 0) {
+            mQueuedId = id;
+            mQueuedAnimate = animate;
+            return;
+        }
+
+        mQueuedId = NO_ID;
+
+        if (mDeferredSwitchScheduled && mDeferredId == id) {
+            mDeferredAnimate = animate;
+            mDeferredNotify |= notify;
+            return;
+        }
+
+        cancelDeferredSwitch();
+
+        if (isCurrentView(id)) {
+            return;
+        }
+
+        long delay = getSwitchDelay(id);
+
+        if (delay > 0) {
+            mDeferredAnimate = animate;
+            mDeferredId = id;
+            mDeferredNotify = notify;
+            mDeferredSwitchScheduled = true;
+
+            postDelayed(mDeferredSwitchRunnable, delay);
+            return;
+        }
+
+        applySwitch(id, animate, notify, true);
     }
 
-    private View findChild(@IdRes int id) {
-        for (View child : getChildren()) {
-            if (child.getId() == id) {
-                return child;
-            }
+    private void prewarmChild(int id, boolean buildLayer) {
+        if (isCurrentView(id) || mInflatingLayouts.indexOfKey(id) >= 0) {
+            return;
+        }
+
+        View view = findChild(id);
+
+        if (view == null) {
+            view = inflatePendingView(id);
+        }
+
+        if (view == null || view.getVisibility() != GONE || (getWidth() == 0 && getHeight() == 0)) {
+            return;
+        }
+
+        measureChildWithMargins(view, mLastWidthMeasureSpec, 0, mLastHeightMeasureSpec, 0);
+        layoutChild(view);
+
+        if (buildLayer && view.getParent() == this && view.getWindowToken() != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            int layerType = view.getLayerType();
+
+            view.setLayerType(LAYER_TYPE_HARDWARE, null);
+            view.buildLayer();
+            view.setLayerType(layerType, null);
+        }
+    }
+
+    private void recycleChild(@NonNull View view) {
+        int resId = mLayouts.get(view.getId(), 0);
+
+        removeChild(view);
+
+        if (mViewPool != null && resId > 0) {
+            mViewPool.putView(resId, view);
+        }
+    }
+
+    private boolean releaseChild(@NonNull View view) {
+        int id = view.getId();
+        int resId = mLayouts.get(id, 0);
+
+        if (resId <= 0) {
+            return false;
         }
 
-        return null;
+        recycleChild(view);
+        mReleasedLayouts.put(id, resId);
+
+        return true;
     }
 
     @NonNull
-    private List<View> getChildren() {
-        List<View> list = new ArrayList<>();
+    private static <T> T[] removeListener(@NonNull T[] listeners, @NonNull T listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                T[] result = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
 
-        for (int i = 0; i < getChildCount(); i++) {
-            list.add(getChildAt(i));
+                return result;
+            }
         }
 
-        return list;
+        return listeners;
     }
 
-    private View inflate(@LayoutRes int resId) {
-        if (resId <= 0) {
-            return null;
+    private void removeChild(@NonNull View view) {
+        if (view.getParent() == this) {
+            removeView(view);
+        } else {
+            removeDetachedView(view, false);
+        }
+    }
+
+    private boolean replaceChild(int id, @NonNull View view) {
+        View oldView = findChild(id);
+
+        if (oldView == null || oldView == view || oldView.getParent() != this || view.getParent() != null) {
+            return false;
+        }
+
+        ChildTransition transition = getTransition(oldView);
+
+        if (transition != null && transition.mRunning) {
+            return false;
         }
 
-        return inflate(getContext(), resId, null);
+        int index = indexOfChild(oldView);
+        int resId = mLayouts.get(id, 0);
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+
+        if (params == null) {
+            params = oldView.getLayoutParams();
+        }
+
+        view.setId(id);
+        view.setVisibility(oldView.getVisibility());
+
+        mReplacingChild = true;
+
+        removeViewInLayout(oldView);
+        addViewInLayout(view, index, params, true);
+
+        mReplacingChild = false;
+
+        mTransitions.remove(id);
+        mLayouts.delete(id);
+
+        if (mViewPool != null && resId > 0) {
+            mViewPool.putView(resId, oldView);
+        }
+
+        requestLayout();
+
+        return true;
     }
 
-    private void initialize(@NonNull Context context, @Nullable AttributeSet attrs) {
-        if (attrs != null) {
-            TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.SwitchViewLayout);
+    private void restoreView(int id) {
+        if (mInflatingLayouts.indexOfKey(id) >= 0) {
+            mQueuedId = id;
+            mQueuedAnimate = false;
+            return;
+        }
 
-            setEnterAnimation(
-                    ta.getResourceId(R.styleable.SwitchViewLayout_animationEnter, R.anim.svl_fade_in));
-            setExitAnimation(
-                    ta.getResourceId(R.styleable.SwitchViewLayout_animationExit, R.anim.svl_fade_out));
+        mQueuedId = NO_ID;
 
-            ta.recycle();
+        if (!isCurrentView(id)) {
+            applySwitch(id, false, false, false);
         }
     }
 
-    private Animation loadAnimation(@AnimRes int resId) {
-        if (resId <= 0) {
-            return null;
+    private void retainChild(@NonNull View view) {
+        switch (mRetention.get(view.getId(), RETAIN_ATTACHED)) {
+        case RETAIN_DETACHED:
+            detachChild(view);
+            break;
+
+        case RETAIN_NONE:
+            if (!releaseChild(view)) {
+                detachChild(view);
+            }
+            break;
         }
 
-        return AnimationUtils.loadAnimation(getContext(), resId);
+        trimRetainedViews();
     }
 
-    private void setVisibility(@Nullable View view, boolean show, boolean animate) {
-        int newVisibility = show ? VISIBLE : GONE;
+    private void scheduleCoalescedSwitch() {
+        if (mCoalescedSwitchScheduled) {
+            return;
+        }
+
+        mCoalescedSwitchScheduled = true;
 
-        if (view == null || view.getVisibility() == newVisibility) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mCoalescedFrameCallback == null) {
+                mCoalescedFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        performCoalescedSwitch();
+                    }
+                };
+            }
+
+            Choreographer.getInstance().postFrameCallback(mCoalescedFrameCallback);
+        } else {
+            post(mCoalescedSwitchRunnable);
+        }
+    }
+
+    private void scheduleIdleInflation() {
+        if (mIdleInflationScheduled || !hasIdleWork()) {
+            return;
+        }
+
+        Looper.myQueue().addIdleHandler(mIdleInflater);
+        mIdleInflationScheduled = true;
+    }
+
+    private void setVisibility(@Nullable View view, boolean show, boolean animate) {
+        if (view == null) {
             return;
         }
 
-        view.setVisibility(newVisibility);
+        ChildTransition transition = getTransition(view);
+        boolean exiting = (transition != null && transition.mRunning && transition.mExit);
+
+        if ((view.getVisibility() == VISIBLE && !exiting) == show) {
+            return;
+        }
 
         if (!animate) {
+            cancelTransition(view);
+            view.setVisibility(show ? VISIBLE : GONE);
             return;
         }
 
-        switch (newVisibility) {
-        case GONE:
-            startAnimation(view, mAnimationExit);
-            break;
+        if (transition == null) {
+            transition = new ChildTransition(view);
+            mTransitions.put(view.getId(), transition);
+        }
 
-        case VISIBLE:
-            startAnimation(view, mAnimationEnter);
-            break;
+        transition.start(!show);
+
+        if (mShowingView && transition.mSwitch != mSwitchCount) {
+            transition.mSwitch = mSwitchCount;
+            mPendingTransitions++;
+        }
+
+        int trackedSwitch = (mMetricsTracker != null) ? mMetricsTracker.getTrackedSwitch() : 0;
+
+        if (trackedSwitch != 0 && transition.mTrackedSwitch != trackedSwitch) {
+            transition.mTrackedSwitch = trackedSwitch;
+            mMetricsTracker.onTransitionStart();
+        }
+
+        if (show) {
+            view.setVisibility(VISIBLE);
+            mTransitionEngine.enter(view, mTransitionCallback);
+        } else {
+            mTransitionEngine.exit(view, mTransitionCallback);
+        }
+
+        if (mHardwareLayersEnabled && transition.mRunning) {
+            transition.promote();
         }
     }
 
     private void showView(int id, boolean animate) {
-        for (View child : getChildren()) {
-            setVisibility(child, (child.getId() == id), animate);
+        boolean traced = SwitchTrace.begin(getResources(), "showView", id);
+
+        if (hasView(id)) {
+            mLastShown.put(id, ++mShowCount);
+        }
+
+        View view = findChild(id);
+
+        if (view == null) {
+            long startTime = System.nanoTime();
+
+            view = inflatePendingView(id);
+
+            if (mMetricsTracker != null) {
+                mMetricsTracker.addInflateTime(System.nanoTime() - startTime);
+            }
+        }
+
+        if (view != null) {
+            attachChild(view);
+        }
+
+        View previous = findChild(mCurrentId);
+        boolean inPlace = (mMeasureCurrentOnly && !mInTransaction && !isLayoutRequested());
+
+        if (inPlace) {
+            mInterceptRequestLayout = true;
+        }
+
+        if (mReconcileVisibility) {
+            // a transition ending synchronously can detach or remove children, so iterate over a copy
+            for (int i = 0; i < getChildCount(); i++) {
+                mReconcileChildren.add(getChildAt(i));
+            }
+
+            for (int i = 0; i < mReconcileChildren.size(); i++) {
+                View child = mReconcileChildren.get(i);
+
+                if (child != view && child.getParent() == this) {
+                    setVisibility(child, false, animate);
+                }
+            }
+
+            mReconcileChildren.clear();
+        } else if (previous != view) {
+            setVisibility(previous, false, animate);
+        }
+
+        setVisibility(view, true, animate);
+
+        mCurrentId = (view != null) ? id : NO_ID;
+
+        if (previous != null && previous != view) {
+            ChildTransition transition = getTransition(previous);
+
+            if (transition == null || !transition.mRunning) {
+                retainChild(previous);
+            }
+        }
+
+        if (inPlace) {
+            mInterceptRequestLayout = false;
+
+            if (mLayoutRequestIntercepted) {
+                long startTime = System.nanoTime();
+
+                mLayoutRequestIntercepted = false;
+
+                if (!layoutInPlace(view)) {
+                    requestLayout();
+                }
+
+                trackLayoutTime(startTime);
+            }
+        }
+
+        SwitchTrace.end(traced);
+    }
+
+    private void trackLayoutTime(long startTime) {
+        if (mMetricsTracker != null) {
+            mMetricsTracker.addLayoutTime(System.nanoTime() - startTime);
         }
     }
 
-    private void startAnimation(@NonNull View view, @Nullable Animation anim) {
-        view.clearAnimation();
+    private void trimRetainedViews() {
+        int retained = mChildren.size() - ((findChild(mCurrentId) != null) ? 1 : 0);
+
+        while (retained > mMaxRetainedViews) {
+            View oldest = null;
+            int oldestShown = mShowCount;
 
-        if (anim != null) {
-            view.startAnimation(anim);
+            for (int i = 0; i < mChildren.size(); i++) {
+                int id = mChildren.keyAt(i);
+                View child = mChildren.valueAt(i);
+                ChildTransition transition = getTransition(child);
+                int shown = mLastShown.get(id, 0);
+
+                if (id == mCurrentId || mLayouts.get(id, 0) <= 0 || (transition != null && transition.mRunning)) {
+                    continue;
+                }
+
+                if (shown < oldestShown || (shown == 0 && oldest == null)) {
+                    oldest = child;
+                    oldestShown = shown;
+                }
+            }
+
+            if (oldest == null || !releaseChild(oldest)) {
+                return;
+            }
+
+            retained--;
         }
     }
 
@@ -144,31 +1324,160 @@ public class SwitchViewLayout extends FrameLayout {
      * @return SwitchViewLayout
      */
     public SwitchViewLayout addView(int id, @Nullable View view) {
-        View oldView = findChild(id);
+        return addView(id, view, RETAIN_ATTACHED);
+    }
 
-        if (view == null || view == oldView) {
+    /**
+     * Adds a new view from the given instance
+     *
+     * @param id the view id
+     * @param view the view instance
+     * @param retention how the view is retained while inactive, one of {@link #RETAIN_ATTACHED},
+     *                  {@link #RETAIN_DETACHED} or {@link #RETAIN_NONE}
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout addView(int id, @Nullable View view, int retention) {
+        if (view == null || view == findChild(id)) {
             return this;
         }
 
-        if (oldView != null) {
-            removeView(oldView);
-        }
+        boolean traced = SwitchTrace.begin(getResources(), "addView", id);
 
-        view.setId(id);
-        addView(view);
+        addChild(id, view);
+
+        mLayouts.delete(id);
+        mRetention.put(id, retention);
+
+        SwitchTrace.end(traced);
 
         return this;
     }
 
     /**
-     * Adds a new view from the given layout resource
+     * Adds a new view from the given layout resource.
+     * Depending on the inflation policy the layout may be inflated later
+     *
+     * @param id the view id
+     * @param resId the layout resource
+     * @return SwitchViewLayout
+     * @see #setInflationPolicy(int)
+     */
+    public SwitchViewLayout addView(int id, @LayoutRes int resId) {
+        return addView(id, resId, RETAIN_ATTACHED);
+    }
+
+    /**
+     * Adds a new view from the given layout resource.
+     * Depending on the inflation policy the layout may be inflated later
      *
      * @param id the view id
      * @param resId the layout resource
+     * @param retention how the view is retained while inactive, one of {@link #RETAIN_ATTACHED},
+     *                  {@link #RETAIN_DETACHED} or {@link #RETAIN_NONE}
+     * @return SwitchViewLayout
+     * @see #setInflationPolicy(int)
+     */
+    public SwitchViewLayout addView(int id, @LayoutRes int resId, int retention) {
+        if (resId <= 0) {
+            return this;
+        }
+
+        boolean traced = SwitchTrace.begin(getResources(), "addView", id);
+
+        if (mInflationPolicy == INFLATE_IMMEDIATE || isCurrentView(id)) {
+            addChild(id, obtainView(resId));
+        } else {
+            removeView(id);
+
+            if (mInflationPolicy == INFLATE_ASYNC) {
+                inflateAsync(id, resId);
+            } else {
+                mPendingLayouts.put(id, resId);
+
+                if (getWindowToken() != null) {
+                    scheduleIdleInflation();
+                }
+            }
+        }
+
+        mLayouts.put(id, resId);
+        mRetention.put(id, retention);
+
+        SwitchTrace.end(traced);
+
+        return this;
+    }
+
+    /**
+     * Adds a listener to notify view changes.
+     * Listeners are kept in a copy-on-write array, so they can be added or removed while notified
+     *
+     * @param listener the listener instance
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout addOnViewChangeListener(@NonNull OnViewChangeListener listener) {
+        mOnViewChangeListeners = appendListener(mOnViewChangeListeners, listener);
+        return this;
+    }
+
+    /**
+     * Adds a listener to notify when a view change starts and when its transitions have ended.
+     * A change replaced by another one before its transitions end is not reported as ended
+     *
+     * @param listener the listener instance
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout addOnViewTransitionListener(@NonNull OnViewTransitionListener listener) {
+        mOnViewTransitionListeners = appendListener(mOnViewTransitionListeners, listener);
+        return this;
+    }
+
+    /**
+     * Binds a source of states that switches the active view without animation.
+     * The source is only subscribed while the layout is attached to a window,
+     * and only its newest state is shown on each frame
+     *
+     * @param source the source instance or null to unbind the current one
      * @return SwitchViewLayout
      */
-    public SwitchViewLayout addView(int id, @LayoutRes int resId) {
-        return addView(id, inflate(resId));
+    public SwitchViewLayout bind(@Nullable StateSource source) {
+        return bind(source, false);
+    }
+
+    /**
+     * Binds a source of states that switches the active view.
+     * The source is only subscribed while the layout is attached to a window,
+     * and only its newest state is shown on each frame
+     *
+     * @param source the source instance or null to unbind the current one
+     * @param animate true if the transitions should be animated
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout bind(@Nullable StateSource source, boolean animate) {
+        boolean attached = (getWindowToken() != null);
+
+        if (mStateSource != null && attached) {
+            mStateSource.unsubscribe(mStateObserver);
+        }
+
+        mStateAnimate = animate;
+        mStateSource = source;
+
+        if (source != null && attached) {
+            source.subscribe(mStateObserver);
+        }
+
+        return this;
+    }
+
+    /**
+     * Starts a transaction to add, remove, replace and switch views with a single layout pass
+     * and a single view change notification when it is committed
+     *
+     * @return Transaction
+     */
+    public Transaction beginTransaction() {
+        return new Transaction(this);
     }
 
     /**
@@ -177,13 +1486,15 @@ public class SwitchViewLayout extends FrameLayout {
      * @return the current view id or -1 if no view is active
      */
     public int getCurrentView() {
-        for (View child : getChildren()) {
-            if (child.getVisibility() == VISIBLE) {
-                return child.getId();
+        if (mReconcileVisibility) {
+            View current = findChild(mCurrentId);
+
+            if (current == null || current.getVisibility() != VISIBLE) {
+                mCurrentId = findVisibleChild();
             }
         }
 
-        return -1;
+        return mCurrentId;
     }
 
     /**
@@ -193,7 +1504,10 @@ public class SwitchViewLayout extends FrameLayout {
      * @return true if a view exists
      */
     public boolean hasView(int id) {
-        return (findChild(id) != null);
+        return (findChild(id) != null
+                || mPendingLayouts.indexOfKey(id) >= 0
+                || mReleasedLayouts.indexOfKey(id) >= 0
+                || mInflatingLayouts.indexOfKey(id) >= 0);
     }
 
     /**
@@ -216,34 +1530,132 @@ public class SwitchViewLayout extends FrameLayout {
         return isCurrentView(view.getId());
     }
 
+    /**
+     * Switches the active view from any thread.
+     * Only the last posted view is shown, on the next frame of the main thread
+     *
+     * @param id the view id
+     */
+    @AnyThread
+    public void postSwitchView(int id) {
+        postSwitchView(id, false);
+    }
+
+    /**
+     * Switches the active view from any thread.
+     * Only the last posted view is shown, on the next frame of the main thread
+     *
+     * @param id the view id
+     * @param animate true if the transition should be animated
+     */
+    @AnyThread
+    public void postSwitchView(int id, boolean animate) {
+        mPostedSwitch.set(((long) id << 1) | (animate ? 1 : 0));
+
+        if (mPostedSwitchScheduled.compareAndSet(false, true)) {
+            sMainHandler.post(mPostedSwitchRunnable);
+        }
+    }
+
+    /**
+     * Prepares the given views when the main thread is idle, so the first switch to them is faster.
+     * Views are inflated if needed, then measured and laid out with the last measure specs
+     *
+     * @param ids the view ids
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout prewarm(int... ids) {
+        return prewarm(false, ids);
+    }
+
+    /**
+     * Prepares the given views when the main thread is idle, so the first switch to them is faster.
+     * Views are inflated if needed, then measured and laid out with the last measure specs
+     *
+     * @param buildLayer true to also build the display lists of the views, requires API 11
+     * @param ids the view ids
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout prewarm(boolean buildLayer, int... ids) {
+        for (int id : ids) {
+            if (hasView(id)) {
+                mPrewarmViews.put(id, buildLayer);
+            }
+        }
+
+        if (getWindowToken() != null) {
+            scheduleIdleInflation();
+        }
+
+        return this;
+    }
+
+    /**
+     * Removes a listener added with {@link #addOnViewChangeListener(OnViewChangeListener)}
+     *
+     * @param listener the listener instance
+     */
+    public void removeOnViewChangeListener(@NonNull OnViewChangeListener listener) {
+        mOnViewChangeListeners = removeListener(mOnViewChangeListeners, listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addOnViewTransitionListener(OnViewTransitionListener)}
+     *
+     * @param listener the listener instance
+     */
+    public void removeOnViewTransitionListener(@NonNull OnViewTransitionListener listener) {
+        mOnViewTransitionListeners = removeListener(mOnViewTransitionListeners, listener);
+    }
+
     /**
      * Removes the view with the given id
      *
      * @param id the view id
      */
     public void removeView(int id) {
-        View view = findChild(id);
+        discardView(id);
 
-        if (view != null) {
-            removeView(view);
+        if (mQueuedId == id) {
+            mQueuedId = NO_ID;
+        }
+
+        if (mDeferredSwitchScheduled && mDeferredId == id) {
+            cancelDeferredSwitch();
         }
     }
     
     /**
-     * Replaces the view for the given id
+     * Replaces the view for the given id.
+     * A replaced current view stays current without any view change or transition notification.
+     * If the old view is attached and not in a transition, the new view takes its index and
+     * visibility directly, otherwise it is shown without animation
      *
      * @param id the view id
      * @param view the view instance
      */
     public void replaceView(int id, @Nullable View view) {
-        boolean isCurrent = isCurrentView(id);
+        boolean traced = SwitchTrace.begin(getResources(), "replaceView", id);
+
+        if (view == null) {
+            removeView(id);
+        } else if (!replaceChild(id, view)) {
+            boolean isCurrent = isCurrentView(id);
+            int retention = mRetention.get(id, RETAIN_ATTACHED);
 
-        removeView(id);
-        addView(id, view);
+            discardView(id);
+            addView(id, view, retention);
 
-        if (isCurrent) {
-            switchView(id, false);
+            if (isCurrent) {
+                // shown again directly and silently, a pending or deferred switch is left untouched
+                applySwitch(id, false, false, false);
+            } else if (mQueuedId == id) {
+                mQueuedId = NO_ID;
+                performSwitch(id, mQueuedAnimate, true);
+            }
         }
+
+        SwitchTrace.end(traced);
     }
 
     /**
@@ -253,53 +1665,193 @@ public class SwitchViewLayout extends FrameLayout {
      * @param resId the layout resource
      */
     public void replaceView(int id, @LayoutRes int resId) {
-        replaceView(id, inflate(resId));
+        boolean traced = SwitchTrace.begin(getResources(), "replaceView", id);
+        int retention = mRetention.get(id, RETAIN_ATTACHED);
+
+        if (mInflationPolicy != INFLATE_IMMEDIATE && !isCurrentView(id)) {
+            addView(id, resId, retention);
+        } else {
+            replaceView(id, obtainView(resId));
+
+            if (findChild(id) != null) {
+                mLayouts.put(id, resId);
+            }
+        }
+
+        SwitchTrace.end(traced);
+    }
+
+    /**
+     * Sets whether the switches requested during the same frame are coalesced.
+     * Only the last requested view is shown, on the next frame
+     *
+     * @param coalesce true to coalesce the switches
+     * @return SwitchViewLayout
+     * @see #setReportIntermediateViews(boolean)
+     */
+    public SwitchViewLayout setCoalesceSwitches(boolean coalesce) {
+        mCoalesceSwitches = coalesce;
+
+        if (!coalesce && mCoalescedSwitchScheduled) {
+            cancelCoalescedSwitch();
+            performSwitch(mCoalescedId, mCoalescedAnimate, !mReportIntermediateViews);
+        }
+
+        return this;
     }
 
     /**
-     * Sets the view enter animation
+     * Sets the view enter animation.
+     * The instance is shared by all the views, use {@link #setEnterAnimation(int)} to
+     * give each view its own instance
      *
      * @param anim the animation instance or null
      * @return SwitchViewLayout
      */
     public SwitchViewLayout setEnterAnimation(@Nullable Animation anim) {
-        mAnimationEnter = anim;
+        mAnimationEngine.setEnterAnimation(anim);
         return this;
     }
 
     /**
-     * Sets the view enter animation
+     * Sets the view enter animation.
+     * The animation is loaded once for each view when it is first needed
      *
      * @param resId the animation resource
      * @return SwitchViewLayout
      */
     public SwitchViewLayout setEnterAnimation(@AnimRes int resId) {
-        return setEnterAnimation(loadAnimation(resId));
+        mAnimationEngine.setEnterAnimation(resId);
+        return this;
     }
 
     /**
-     * Sets the view exit animation
+     * Sets the view exit animation.
+     * The instance is shared by all the views, use {@link #setExitAnimation(int)} to
+     * give each view its own instance
      *
      * @param anim the animation instance or null
      * @return SwitchViewLayout
      */
     public SwitchViewLayout setExitAnimation(@Nullable Animation anim) {
-        mAnimationExit = anim;
+        mAnimationEngine.setExitAnimation(anim);
         return this;
     }
 
     /**
-     * Sets the view exit animation
+     * Sets the view exit animation.
+     * The animation is loaded once for each view when it is first needed
      *
      * @param resId the animation resource
      * @return SwitchViewLayout
      */
     public SwitchViewLayout setExitAnimation(@AnimRes int resId) {
-        return setExitAnimation(loadAnimation(resId));
+        mAnimationEngine.setExitAnimation(resId);
+        return this;
+    }
+
+    /**
+     * Sets whether the views are rendered into a hardware layer while their transition runs.
+     * The previous layer type of each view is restored when its transition ends.
+     * Views whose transition ends as soon as it starts are not promoted
+     *
+     * @param enabled true to use hardware layers during transitions
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setHardwareLayersEnabled(boolean enabled) {
+        mHardwareLayersEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * Sets when the layouts added from a resource are inflated
+     *
+     * @param policy one of {@link #INFLATE_IMMEDIATE}, {@link #INFLATE_LAZY}, {@link #INFLATE_ON_IDLE}
+     *               or {@link #INFLATE_ASYNC}
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setInflationPolicy(int policy) {
+        mInflationPolicy = policy;
+
+        cancelIdleInflation();
+
+        if (getWindowToken() != null) {
+            scheduleIdleInflation();
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of inactive views kept in memory.
+     * When exceeded, the least recently shown views added from a layout resource are released
+     * and inflated again when shown
+     *
+     * @param max the maximum number of inactive views
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setMaxRetainedViews(int max) {
+        mMaxRetainedViews = max;
+        trimRetainedViews();
+        return this;
+    }
+
+    /**
+     * Sets whether only the current view is measured.
+     * The size of the layout then depends only on the current view, and switching between
+     * views of the same size lays out the new view in place without requesting a layout
+     * from the ancestors
+     *
+     * @param currentOnly true to measure only the current view
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setMeasureCurrentOnly(boolean currentOnly) {
+        mMeasureCurrentOnly = currentOnly;
+        requestLayout();
+        return this;
+    }
+
+    /**
+     * Sets the minimum time the view with the given id stays visible once shown.
+     * Switches requested earlier are deferred until the time has passed
+     *
+     * @param id the view id
+     * @param time the minimum time in milliseconds, or 0 to remove it
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setMinDisplayTime(int id, long time) {
+        if (time > 0) {
+            mMinDisplayTimes.put(id, time);
+        } else {
+            mMinDisplayTimes.delete(id);
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets the listener to notify the costs of each switch, measured until its transitions
+     * end and a frame has been drawn. Requires API 16
+     *
+     * @param listener the listener instance or null
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setOnSwitchMetricsListener(@Nullable OnSwitchMetricsListener listener) {
+        if (mMetricsTracker != null) {
+            mMetricsTracker.cancel();
+            mMetricsTracker = null;
+        }
+
+        if (listener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mMetricsTracker = new MetricsTracker(getContext(), this, listener);
+        }
+
+        return this;
     }
 
     /**
-     * Sets the listener to notify view changes
+     * Sets the listener to notify view changes.
+     * Listeners added with {@link #addOnViewChangeListener(OnViewChangeListener)} are kept
      *
      * @param listener the listener instance or null
      * @return SwitchViewLayout
@@ -309,6 +1861,96 @@ public class SwitchViewLayout extends FrameLayout {
         return this;
     }
 
+    /**
+     * Sets whether the current view is reconciled with the visibility of the children.
+     * Enable it if the visibility of the children is modified outside of the layout
+     *
+     * @param reconcile true to check the children visibility
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setReconcileVisibility(boolean reconcile) {
+        mReconcileVisibility = reconcile;
+        return this;
+    }
+
+    /**
+     * Sets whether the listener is notified of the views skipped by coalesced switches.
+     * When enabled the listener is notified as soon as each switch is requested
+     *
+     * @param report true to notify every requested view
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setReportIntermediateViews(boolean report) {
+        mReportIntermediateViews = report;
+        return this;
+    }
+
+    /**
+     * Sets the time to wait before showing the view with the given id.
+     * The view is not shown at all if another view is requested during the delay
+     *
+     * @param id the view id
+     * @param delay the delay in milliseconds, or 0 to remove it
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setShowDelay(int id, long delay) {
+        if (delay > 0) {
+            mShowDelays.put(id, delay);
+        } else {
+            mShowDelays.delete(id);
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets whether trace sections are added around switches, inflations and replacements,
+     * labelled with the resource name of the view id or layout. Requires API 18
+     *
+     * @param enabled true to add the trace sections
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        SwitchTrace.sEnabled = enabled;
+    }
+
+    /**
+     * Sets the engine that runs the view transitions
+     *
+     * @param engine the engine instance or null to use view animations
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setTransitionEngine(@Nullable TransitionEngine engine) {
+        for (int i = 0; i < mTransitions.size(); i++) {
+            ChildTransition transition = mTransitions.valueAt(i);
+
+            if (transition.mRunning) {
+                boolean exit = transition.mExit;
+
+                mTransitionEngine.cancel(transition.mView);
+                endTransition(transition);
+
+                if (exit) {
+                    transition.mView.setVisibility(GONE);
+                }
+            }
+        }
+
+        mTransitionEngine = (engine != null) ? engine : mAnimationEngine;
+        return this;
+    }
+
+    /**
+     * Sets the pool used to obtain and recycle the views added from a layout resource.
+     * Views are returned to the pool when they are removed, replaced or released
+     *
+     * @param pool the pool instance or null
+     * @return SwitchViewLayout
+     */
+    public SwitchViewLayout setViewPool(@Nullable SwitchViewPool pool) {
+        mViewPool = pool;
+        return this;
+    }
+
     /**
      * Switches the active view in the layout
      *
@@ -325,14 +1967,286 @@ public class SwitchViewLayout extends FrameLayout {
      * @param animate true if the transition should be animated
      */
     public void switchView(int id, boolean animate) {
-        if (isCurrentView(id)) {
-            return;
+        boolean traced = SwitchTrace.begin(getResources(), "switchView", id);
+
+        if (mCoalesceSwitches) {
+            coalesceSwitch(id, animate);
+        } else {
+            performSwitch(id, animate, true);
         }
 
-        showView(id, animate);
+        SwitchTrace.end(traced);
+    }
 
-        if (mOnViewChangeListener != null) {
-            mOnViewChangeListener.onViewChange(this, id);
+    private static final class ChildTransition {
+
+        private boolean mExit;
+        private int mLayerType;
+        private boolean mPromoted;
+        private boolean mRunning;
+        private int mSwitch;
+        private int mTrackedSwitch;
+        private final View mView;
+
+        ChildTransition(@NonNull View view) {
+            mView = view;
+        }
+
+        void end() {
+            mRunning = false;
+
+            if (mPromoted) {
+                if (mLayerType != LAYER_TYPE_HARDWARE) {
+                    mView.setLayerType(mLayerType, null);
+                }
+
+                mPromoted = false;
+            }
+        }
+
+        void promote() {
+            if (!mPromoted && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                mLayerType = mView.getLayerType();
+
+                if (mLayerType != LAYER_TYPE_HARDWARE) {
+                    mView.setLayerType(LAYER_TYPE_HARDWARE, null);
+                }
+
+                mPromoted = true;
+            }
+        }
+
+        void start(boolean exit) {
+            mExit = exit;
+            mRunning = true;
+        }
+    }
+
+    /**
+     * State of the layout kept across configuration changes: the current view and the views
+     * added from a layout resource that are not inflated yet
+     */
+    static class SavedState extends BaseSavedState {
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+
+        private int mCurrentId;
+        private int[] mLazyIds;
+        private int[] mLazyLayouts;
+        private int[] mLazyRetention;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            mCurrentId = in.readInt();
+            mLazyIds = in.createIntArray();
+            mLazyLayouts = in.createIntArray();
+            mLazyRetention = in.createIntArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(mCurrentId);
+            out.writeIntArray(mLazyIds);
+            out.writeIntArray(mLazyLayouts);
+            out.writeIntArray(mLazyRetention);
+        }
+    }
+
+    /**
+     * Batch of operations applied to the layout when committed.
+     * Only the last requested switch is performed, after all the other operations
+     */
+    public static final class Transaction {
+
+        private static final int OP_ADD = 0;
+        private static final int OP_REMOVE = 1;
+        private static final int OP_REPLACE = 2;
+
+        private final SwitchViewLayout mLayout;
+        private final ArrayList<Operation> mOperations = new ArrayList<>();
+        private boolean mSwitchAnimate;
+        private int mSwitchId = NO_ID;
+        private boolean mSwitchRequested;
+
+        Transaction(@NonNull SwitchViewLayout layout) {
+            mLayout = layout;
+        }
+
+        private Transaction enqueue(int type, int id, @Nullable View view, @LayoutRes int resId, int retention,
+                                    boolean fromLayout) {
+            Operation operation = new Operation();
+            operation.mFromLayout = fromLayout;
+            operation.mId = id;
+            operation.mResId = resId;
+            operation.mRetention = retention;
+            operation.mType = type;
+            operation.mView = view;
+
+            mOperations.add(operation);
+
+            return this;
+        }
+
+        /**
+         * Adds a new view from the given instance
+         *
+         * @param id the view id
+         * @param view the view instance
+         * @return Transaction
+         */
+        public Transaction addView(int id, @Nullable View view) {
+            return addView(id, view, RETAIN_ATTACHED);
+        }
+
+        /**
+         * Adds a new view from the given instance
+         *
+         * @param id the view id
+         * @param view the view instance
+         * @param retention how the view is retained while inactive
+         * @return Transaction
+         */
+        public Transaction addView(int id, @Nullable View view, int retention) {
+            return enqueue(OP_ADD, id, view, 0, retention, false);
+        }
+
+        /**
+         * Adds a new view from the given layout resource
+         *
+         * @param id the view id
+         * @param resId the layout resource
+         * @return Transaction
+         */
+        public Transaction addView(int id, @LayoutRes int resId) {
+            return addView(id, resId, RETAIN_ATTACHED);
+        }
+
+        /**
+         * Adds a new view from the given layout resource
+         *
+         * @param id the view id
+         * @param resId the layout resource
+         * @param retention how the view is retained while inactive
+         * @return Transaction
+         */
+        public Transaction addView(int id, @LayoutRes int resId, int retention) {
+            return enqueue(OP_ADD, id, null, resId, retention, true);
+        }
+
+        /**
+         * Applies the operations to the layout.
+         * The transaction is cleared and can be reused afterwards
+         */
+        public void commit() {
+            mLayout.applyTransaction(this);
+
+            mOperations.clear();
+            mSwitchRequested = false;
+        }
+
+        /**
+         * Removes the view with the given id
+         *
+         * @param id the view id
+         * @return Transaction
+         */
+        public Transaction removeView(int id) {
+            return enqueue(OP_REMOVE, id, null, 0, RETAIN_ATTACHED, false);
+        }
+
+        /**
+         * Replaces the view for the given id
+         *
+         * @param id the view id
+         * @param view the view instance
+         * @return Transaction
+         */
+        public Transaction replaceView(int id, @Nullable View view) {
+            return enqueue(OP_REPLACE, id, view, 0, RETAIN_ATTACHED, false);
+        }
+
+        /**
+         * Replaces the view for the given id
+         *
+         * @param id the view id
+         * @param resId the layout resource
+         * @return Transaction
+         */
+        public Transaction replaceView(int id, @LayoutRes int resId) {
+            return enqueue(OP_REPLACE, id, null, resId, RETAIN_ATTACHED, true);
+        }
+
+        /**
+         * Switches the active view once the other operations are applied
+         *
+         * @param id the view id
+         * @return Transaction
+         */
+        public Transaction switchView(int id) {
+            return switchView(id, false);
+        }
+
+        /**
+         * Switches the active view once the other operations are applied
+         *
+         * @param id the view id
+         * @param animate true if the transition should be animated
+         * @return Transaction
+         */
+        public Transaction switchView(int id, boolean animate) {
+            mSwitchAnimate = animate;
+            mSwitchId = id;
+            mSwitchRequested = true;
+            return this;
+        }
+
+        private static final class Operation {
+
+            private boolean mFromLayout;
+            private int mId;
+            private int mResId;
+            private int mRetention;
+            private int mType;
+            private View mView;
+
+            void apply(@NonNull SwitchViewLayout layout) {
+                switch (mType) {
+                case OP_ADD:
+                    if (mFromLayout) {
+                        layout.addView(mId, mResId, mRetention);
+                    } else {
+                        layout.addView(mId, mView, mRetention);
+                    }
+                    break;
+
+                case OP_REMOVE:
+                    layout.removeView(mId);
+                    break;
+
+                case OP_REPLACE:
+                    if (mFromLayout) {
+                        layout.replaceView(mId, mResId);
+                    } else {
+                        layout.replaceView(mId, mView);
+                    }
+                    break;
+                }
+            }
         }
     }
 }
@@ -0,0 +1,91 @@
+package st.lowlevel.layout;
+
+import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of views inflated from layout resources that can be shared by several
+ * {@link SwitchViewLayout} instances, e.g. the rows of a list.
+ * Views are reused as they were left, so their content must be bound again.
+ * The pool should only be shared by layouts using the same context.
+ */
+public class SwitchViewPool {
+
+    private static final int DEFAULT_MAX_VIEWS = 5;
+
+    private final SparseIntArray mMaxViews = new SparseIntArray();
+    private final SparseArray<ArrayList<View>> mViews = new SparseArray<>();
+
+    /**
+     * Removes all the views from the pool
+     */
+    public void clear() {
+        mViews.clear();
+    }
+
+    /**
+     * Gets a view inflated from the given layout resource
+     *
+     * @param resId the layout resource
+     * @return the view instance or null if the pool has no view for the resource
+     */
+    @Nullable
+    public View getView(@LayoutRes int resId) {
+        ArrayList<View> views = mViews.get(resId);
+
+        if (views == null || views.isEmpty()) {
+            return null;
+        }
+
+        return views.remove(views.size() - 1);
+    }
+
+    /**
+     * Puts a view inflated from the given layout resource in the pool.
+     * The view is discarded if it still has a parent or the pool is full
+     *
+     * @param resId the layout resource
+     * @param view the view instance
+     */
+    public void putView(@LayoutRes int resId, @NonNull View view) {
+        if (view.getParent() != null) {
+            return;
+        }
+
+        ArrayList<View> views = mViews.get(resId);
+
+        if (views == null) {
+            views = new ArrayList<>();
+            mViews.put(resId, views);
+        }
+
+        if (views.size() < mMaxViews.get(resId, DEFAULT_MAX_VIEWS) && !views.contains(view)) {
+            views.add(view);
+        }
+    }
+
+    /**
+     * Sets the maximum number of views kept for the given layout resource
+     *
+     * @param resId the layout resource
+     * @param max the maximum number of views
+     * @return SwitchViewPool
+     */
+    public SwitchViewPool setMaxViews(@LayoutRes int resId, int max) {
+        mMaxViews.put(resId, max);
+
+        ArrayList<View> views = mViews.get(resId);
+
+        while (views != null && views.size() > max) {
+            views.remove(views.size() - 1);
+        }
+
+        return this;
+    }
+}
@@ -0,0 +1,41 @@
+package st.lowlevel.layout;
+
+import android.support.annotation.NonNull;
+import android.view.View;
+
+/**
+ * Runs the enter and exit transitions of the views in a {@link SwitchViewLayout}
+ */
+public interface TransitionEngine {
+
+    interface Callback {
+        void onTransitionEnd(@NonNull View view);
+    }
+
+    /**
+     * Starts the enter transition of a view. The view is already visible.
+     * A running transition of the same view is replaced without notifying its callback
+     *
+     * @param view the view instance
+     * @param callback the callback to notify when the transition finishes
+     */
+    void enter(@NonNull View view, @NonNull Callback callback);
+
+    /**
+     * Starts the exit transition of a view. The view is still visible and must be
+     * made gone by the engine, either immediately or when the transition finishes.
+     * A running transition of the same view is replaced without notifying its callback
+     *
+     * @param view the view instance
+     * @param callback the callback to notify when the transition finishes
+     */
+    void exit(@NonNull View view, @NonNull Callback callback);
+
+    /**
+     * Cancels the running transition of a view without notifying its callback.
+     * Any property changed by the transition must be restored
+     *
+     * @param view the view instance
+     */
+    void cancel(@NonNull View view);
+}
@@ -0,0 +1,299 @@
+package st.lowlevel.layout;
+
+import android.app.Activity;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import st.lowlevel.switchviewlayout.BuildConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class SwitchViewLayoutTest {
+
+    private static final int CONTENT = 1;
+    private static final int LOADING = 2;
+    private static final int ERROR = 3;
+
+    private Activity mActivity;
+    private final List<Integer> mChanges = new ArrayList<>();
+    private ManualTransitionEngine mEngine;
+    private SwitchViewLayout mLayout;
+    private final List<String> mTransitions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).create();
+
+        mActivity = controller.get();
+        mEngine = new ManualTransitionEngine();
+        mLayout = new SwitchViewLayout(mActivity);
+        mLayout.setTransitionEngine(mEngine);
+
+        mActivity.setContentView(mLayout);
+        controller.start().resume().visible();
+    }
+
+    private void addViews() {
+        mLayout.addView(CONTENT, new View(mActivity));
+        mLayout.addView(LOADING, new View(mActivity));
+        mLayout.addView(ERROR, new View(mActivity));
+    }
+
+    private static void advanceBy(long millis) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void listen() {
+        mLayout.addOnViewChangeListener(new SwitchViewLayout.OnViewChangeListener() {
+            @Override
+            public void onViewChange(@NonNull SwitchViewLayout view, int id) {
+                mChanges.add(id);
+            }
+        });
+
+        mLayout.addOnViewTransitionListener(new SwitchViewLayout.OnViewTransitionListener() {
+            @Override
+            public void onViewChangeEnded(@NonNull SwitchViewLayout view, int id) {
+                mTransitions.add("ended " + id);
+            }
+
+            @Override
+            public void onViewChangeStarted(@NonNull SwitchViewLayout view, int id) {
+                mTransitions.add("started " + id);
+            }
+        });
+    }
+
+    @Test
+    public void coalescedSwitchesShowOnlyTheLastView() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        listen();
+
+        mLayout.setCoalesceSwitches(true);
+        mLayout.switchView(LOADING);
+        mLayout.switchView(ERROR);
+
+        assertEquals(CONTENT, mLayout.getCurrentView());
+
+        advanceBy(100);
+
+        assertEquals(ERROR, mLayout.getCurrentView());
+        assertEquals(View.GONE, mLayout.findViewById(LOADING).getVisibility());
+        assertEquals(1, mChanges.size());
+        assertEquals(ERROR, (int) mChanges.get(0));
+    }
+
+    @Test
+    public void coalescedSwitchesReportIntermediateViews() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        listen();
+
+        mLayout.setCoalesceSwitches(true);
+        mLayout.setReportIntermediateViews(true);
+        mLayout.switchView(LOADING);
+        mLayout.switchView(ERROR);
+
+        assertEquals(2, mChanges.size());
+
+        advanceBy(100);
+
+        assertEquals(ERROR, mLayout.getCurrentView());
+        assertEquals(2, mChanges.size());
+        assertEquals(2, mTransitions.size());
+        assertEquals("started " + ERROR, mTransitions.get(0));
+        assertEquals("ended " + ERROR, mTransitions.get(1));
+    }
+
+    @Test
+    public void maxRetainedViewsReleasesLeastRecentlyShown() {
+        mLayout.addView(CONTENT, android.R.layout.simple_list_item_1);
+        mLayout.addView(LOADING, android.R.layout.simple_list_item_1);
+        mLayout.addView(ERROR, android.R.layout.simple_list_item_1);
+
+        mLayout.switchView(CONTENT);
+        View content = mLayout.findViewById(CONTENT);
+        mLayout.switchView(LOADING);
+        View loading = mLayout.findViewById(LOADING);
+        mLayout.switchView(ERROR);
+
+        mLayout.setMaxRetainedViews(1);
+
+        assertNull(content.getParent());
+        assertSame(mLayout, loading.getParent());
+        assertTrue(mLayout.hasView(CONTENT));
+
+        mLayout.switchView(CONTENT);
+
+        assertEquals(CONTENT, mLayout.getCurrentView());
+        assertNotNull(mLayout.findViewById(CONTENT));
+    }
+
+    @Test
+    public void minDisplayTimeDefersNextSwitch() {
+        addViews();
+        mLayout.setMinDisplayTime(LOADING, 1000);
+        mLayout.switchView(LOADING);
+
+        advanceBy(200);
+        mLayout.switchView(CONTENT);
+
+        assertEquals(LOADING, mLayout.getCurrentView());
+
+        advanceBy(799);
+        assertEquals(LOADING, mLayout.getCurrentView());
+
+        advanceBy(1);
+        assertEquals(CONTENT, mLayout.getCurrentView());
+    }
+
+    @Test
+    public void replaceViewInPlaceIsSilent() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        listen();
+
+        View old = mLayout.findViewById(CONTENT);
+        int index = mLayout.indexOfChild(old);
+        View view = new View(mActivity);
+
+        mLayout.replaceView(CONTENT, view);
+
+        assertNull(old.getParent());
+        assertEquals(index, mLayout.indexOfChild(view));
+        assertEquals(View.VISIBLE, view.getVisibility());
+        assertTrue(mLayout.isCurrentView(view));
+        assertTrue(mChanges.isEmpty());
+        assertTrue(mTransitions.isEmpty());
+    }
+
+    @Test
+    public void replaceViewDuringTransitionKeepsDeferredSwitch() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        mLayout.setMinDisplayTime(LOADING, 1000);
+        mLayout.switchView(LOADING, true);
+        mLayout.switchView(CONTENT);
+        listen();
+
+        View view = new View(mActivity);
+
+        mLayout.replaceView(LOADING, view);
+
+        assertTrue(mLayout.isCurrentView(view));
+        assertEquals(View.VISIBLE, view.getVisibility());
+        assertTrue(mChanges.isEmpty());
+
+        advanceBy(1000);
+
+        assertEquals(CONTENT, mLayout.getCurrentView());
+        assertEquals(1, mChanges.size());
+    }
+
+    @Test
+    public void retainDetachedDetachesInactiveView() {
+        View content = new View(mActivity);
+
+        mLayout.addView(CONTENT, content, SwitchViewLayout.RETAIN_DETACHED);
+        mLayout.addView(LOADING, new View(mActivity));
+        mLayout.switchView(CONTENT);
+        mLayout.switchView(LOADING, true);
+
+        assertSame(mLayout, content.getParent());
+
+        mEngine.endAll();
+
+        assertNull(content.getParent());
+        assertTrue(mLayout.hasView(CONTENT));
+
+        mLayout.switchView(CONTENT);
+
+        assertSame(mLayout, content.getParent());
+        assertEquals(View.VISIBLE, content.getVisibility());
+    }
+
+    @Test
+    public void showDelayDefersSwitch() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        mLayout.setShowDelay(LOADING, 500);
+        mLayout.switchView(LOADING);
+
+        advanceBy(499);
+        assertEquals(CONTENT, mLayout.getCurrentView());
+
+        advanceBy(1);
+        assertEquals(LOADING, mLayout.getCurrentView());
+    }
+
+    @Test
+    public void showDelaySkipsViewRequestedAgain() {
+        addViews();
+        mLayout.switchView(CONTENT);
+        mLayout.setShowDelay(LOADING, 500);
+        mLayout.switchView(LOADING);
+        mLayout.switchView(ERROR);
+
+        assertEquals(ERROR, mLayout.getCurrentView());
+
+        advanceBy(500);
+
+        assertEquals(ERROR, mLayout.getCurrentView());
+        assertEquals(View.GONE, mLayout.findViewById(LOADING).getVisibility());
+    }
+
+    /**
+     * Engine whose transitions run until {@link #endAll()} is called
+     */
+    private static final class ManualTransitionEngine implements TransitionEngine {
+
+        private final Map<View, Callback> mRunning = new HashMap<>();
+
+        @Override
+        public void cancel(@NonNull View view) {
+            mRunning.remove(view);
+        }
+
+        void endAll() {
+            Map<View, Callback> running = new HashMap<>(mRunning);
+
+            mRunning.clear();
+
+            for (Map.Entry<View, Callback> entry : running.entrySet()) {
+                entry.getValue().onTransitionEnd(entry.getKey());
+            }
+        }
+
+        @Override
+        public void enter(@NonNull View view, @NonNull Callback callback) {
+            mRunning.put(view, callback);
+        }
+
+        @Override
+        public void exit(@NonNull View view, @NonNull Callback callback) {
+            view.setVisibility(View.GONE);
+            mRunning.put(view, callback);
+        }
+    }
+}